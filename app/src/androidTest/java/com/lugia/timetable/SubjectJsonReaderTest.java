@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * SubjectJsonReader is built on android.util.JsonReader, which is only a stub on the JVM, so this test run
+ * on device.
+ */
+public class SubjectJsonReaderTest extends TestCase
+{
+    // save file as written by the version before the binary format
+    private static final String LEGACY_FILE =
+        "{\"timeTable\":[" +
+            "{\"subjectCode\":\"TMA1101\",\"subjectDescription\":\"Calculus\",\"creditHours\":3,\"color\":0," +
+            "\"lecturerSection\":\"TC01\",\"tutorialSection\":\"TT01\"," +
+            "\"schedule\":[" +
+                "{\"day\":1,\"time\":8,\"length\":2,\"section\":0,\"room\":\"CNMX1001\"}," +
+                "{\"day\":3,\"time\":14,\"length\":1,\"section\":1,\"room\":\"CQAR2004\"}]," +
+            "\"event\":[" +
+                "{\"id\":1400000000000,\"name\":\"Quiz\",\"venue\":\"CNMX1001\",\"note\":\"Chapter 1\",\"type\":0," +
+                "\"date\":20140315,\"timeStart\":800,\"timeEnd\":900}]}," +
+            "{\"subjectCode\":\"TSN2101\",\"subjectDescription\":\"Operating System\",\"creditHours\":4,\"color\":1," +
+            "\"lecturerSection\":null,\"tutorialSection\":null,\"schedule\":[],\"event\":[]}]}";
+
+    public void testReadLegacyFile() throws IOException
+    {
+        ArrayList<Subject> subjects = read(LEGACY_FILE);
+
+        assertEquals(2, subjects.size());
+
+        Subject subject = subjects.get(0);
+
+        assertEquals("TMA1101", subject.getSubjectCode());
+        assertEquals("Calculus", subject.getSubjectDescription());
+        assertEquals("TC01", subject.getLectureSection());
+        assertEquals("TT01", subject.getTutorialSection());
+        assertEquals(3, subject.getCreditHours());
+
+        assertEquals(2, subject.getScheduleCount());
+        assertEquals(Schedule.pack(Schedule.LECTURE_SECTION, 1, 8, 2), subject.getScheduleSlot(0));
+        assertEquals("CNMX1001", subject.getScheduleRoom(0));
+        assertEquals(Schedule.pack(Schedule.TUTORIAL_SECTION, 3, 14, 1), subject.getScheduleSlot(1));
+
+        assertEquals(1, subject.getEvents().size());
+
+        Event event = subject.getEvents().get(0);
+
+        assertEquals(1400000000000L, event.getId());
+        assertEquals("Quiz", event.getName());
+        assertEquals("Chapter 1", event.getNote());
+        assertEquals(20140315, event.getDate());
+        assertEquals(800, event.getTimeStart());
+        assertEquals(900, event.getTimeEnd());
+    }
+
+    public void testNullSections() throws IOException
+    {
+        Subject subject = read(LEGACY_FILE).get(1);
+
+        assertEquals("TSN2101", subject.getSubjectCode());
+        assertNull(subject.getLectureSection());
+        assertNull(subject.getTutorialSection());
+        assertEquals(0, subject.getScheduleCount());
+        assertEquals(0, subject.getEvents().size());
+    }
+
+    public void testUnknownKeysAreSkipped() throws IOException
+    {
+        String json =
+            "{\"version\":{\"major\":1},\"timeTable\":[" +
+                "{\"subjectCode\":\"TMA1101\",\"remark\":[1,{\"a\":null}],\"creditHours\":3," +
+                "\"schedule\":[{\"day\":1,\"time\":8,\"length\":1,\"section\":0,\"room\":\"CNMX1001\",\"capacity\":40}]," +
+                "\"event\":[{\"id\":7,\"name\":\"Test\",\"reminder\":true,\"date\":20140315}]}]," +
+            "\"theme\":\"dark\"}";
+
+        ArrayList<Subject> subjects = read(json);
+
+        assertEquals(1, subjects.size());
+
+        Subject subject = subjects.get(0);
+
+        assertEquals("TMA1101", subject.getSubjectCode());
+        assertEquals(3, subject.getCreditHours());
+        assertEquals(1, subject.getScheduleCount());
+        assertEquals("CNMX1001", subject.getScheduleRoom(0));
+        assertEquals(1, subject.getEvents().size());
+        assertEquals("Test", subject.getEvents().get(0).getName());
+    }
+
+    public void testMissingSubjectArrayIsRejected()
+    {
+        assertRejected("{\"theme\":\"dark\"}");
+    }
+
+    public void testInvalidScheduleIsRejected()
+    {
+        // section 2 does not exist
+        assertRejected("{\"timeTable\":[{\"subjectCode\":\"TMA1101\",\"schedule\":[{\"day\":1,\"time\":8,\"length\":1,\"section\":2}]}]}");
+    }
+
+    public void testTruncatedFileIsRejected()
+    {
+        assertRejected(LEGACY_FILE.substring(0, LEGACY_FILE.length() / 2));
+    }
+
+    private static void assertRejected(String json)
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+
+        try
+        {
+            SubjectJsonReader.read(new ByteArrayInputStream(json.getBytes()), "UTF-8", subjects);
+
+            fail("Invalid subject list is accepted.");
+        }
+        catch (IOException e)
+        {
+            // the list is left untouched
+            assertEquals(0, subjects.size());
+        }
+    }
+
+    private static ArrayList<Subject> read(String json) throws IOException
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+
+        SubjectJsonReader.read(new ByteArrayInputStream(json.getBytes("UTF-8")), "UTF-8", subjects);
+
+        return subjects;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Per row cost of decoding the day and time cell of a schedule row, for development use only.
+ *
+ * Compare the string based convertDay and convertTime that the parser used before with
+ * {@link CourseParser#decodeSlot(CharSequence, CharSequence)}, over the same set of cells. Both decoders
+ * are checked to give the same result before anything is measured.
+ *
+ * The two decoders differ on purpose for a range crossing noon such as "11:00 AM - 12:50 PM", convertTime
+ * take the PM of the ending time and return 23, decodeSlot only look at the marker of the starting time.
+ * The check compare decodeSlot with convertTime of the starting time for that reason.
+ */
+final class DecodeBenchmark
+{
+    public static final int DECODER_LEGACY = 0;
+    public static final int DECODER_SLOT   = 1;
+
+    private static final String[] DECODER_NAMES = new String[] { "convertDay/convertTime", "decodeSlot" };
+
+    // distinct rows decoded in every round
+    private static final int ROW_COUNT = 1000;
+
+    private static final int WARMUP_MILLIS  = 2000;
+    private static final int MEASURE_MILLIS = 5000;
+
+    private static final String TAG = "DecodeBenchmark";
+
+    // keep the result alive, so the decoding is not optimized away
+    private static int sSink;
+
+    // prevent user to instantiate using default constructor
+    private DecodeBenchmark() { }
+
+    /**
+     * Run both decoders against the cells and log the result.
+     */
+    public static void runAll()
+    {
+        String[] days  = new String[ROW_COUNT];
+        String[] times = new String[days.length];
+
+        generateCells(days, times);
+        verify(days, times);
+
+        Result[] results = new Result[DECODER_NAMES.length];
+
+        for (int decoder = DECODER_LEGACY; decoder <= DECODER_SLOT; decoder++)
+        {
+            results[decoder] = run(decoder, days, times);
+
+            Log.i(TAG, String.format("%s: %.1f ns/row, %.1f bytes/row", DECODER_NAMES[decoder],
+                                     results[decoder].nanosPerRow, results[decoder].allocationPerRow));
+        }
+
+        Log.i(TAG, String.format("decodeSlot is %.1fx as fast", results[DECODER_LEGACY].nanosPerRow / results[DECODER_SLOT].nanosPerRow));
+    }
+
+    /**
+     * Measure a single decoder with the cells, every row is a day cell and a time cell at the same index.
+     */
+    public static Result run(int decoder, String[] days, String[] times)
+    {
+        // let the JIT settle down first
+        long end = System.currentTimeMillis() + WARMUP_MILLIS;
+
+        while (System.currentTimeMillis() < end)
+            decodeAll(decoder, days, times);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+
+        long rows = 0;
+
+        long start = System.nanoTime();
+        end = System.currentTimeMillis() + MEASURE_MILLIS;
+
+        while (System.currentTimeMillis() < end)
+        {
+            decodeAll(decoder, days, times);
+            rows += days.length;
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        long allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Result result = new Result();
+
+        result.nanosPerRow      = (double)elapsed / rows;
+        result.allocationPerRow = (double)allocated / rows;
+
+        return result;
+    }
+
+    private static void decodeAll(int decoder, String[] days, String[] times)
+    {
+        int sink = 0;
+
+        if (decoder == DECODER_LEGACY)
+        {
+            for (int i = 0; i < days.length; i++)
+                sink += convertDay(days[i]) + convertTime(times[i]);
+        }
+        else
+        {
+            for (int i = 0; i < days.length; i++)
+                sink += CourseParser.decodeSlot(days[i], times[i]);
+        }
+
+        sSink += sink;
+    }
+
+    private static void verify(String[] days, String[] times)
+    {
+        for (int i = 0; i < days.length; i++)
+        {
+            int slot = CourseParser.decodeSlot(days[i], times[i]);
+
+            if (CourseParser.getSlotDay(slot) != convertDay(days[i]) || CourseParser.getSlotTime(slot) != convertTime(getStartTime(times[i])))
+                throw new IllegalStateException("Decoders disagree on " + days[i] + " " + times[i]);
+        }
+    }
+
+    /**
+     * @return the starting time of a time range, or the cell itself if it is a single time.
+     */
+    private static String getStartTime(String timeString)
+    {
+        int index = timeString.indexOf('-');
+
+        return index == -1 ? timeString : timeString.substring(0, index).trim();
+    }
+
+    /**
+     * Fill the arrays with cells in the same format as ICEMS schedule rows, single time, time range within
+     * the morning or afternoon, and time range crossing noon.
+     */
+    private static void generateCells(String[] days, String[] times)
+    {
+        for (int i = 0; i < days.length; i++)
+        {
+            // days from MON to SAT, hours from 8 AM to 5 PM
+            int hour = 8 + i % 10;
+            int displayHour = hour > 12 ? hour - 12 : hour;
+            String marker = hour >= 12 ? "PM" : "AM";
+
+            days[i] = CourseParser.DAYS[1 + i % 6];
+
+            // a two hour range end at the next hour, which may be on the other side of noon
+            int endHour = hour + 1;
+            int displayEndHour = endHour > 12 ? endHour - 12 : endHour;
+            String endMarker = endHour >= 12 ? "PM" : "AM";
+
+            if (i % 3 == 0)
+                times[i] = String.format("%02d:00 %s", displayHour, marker);
+            else if (i % 3 == 1)
+                times[i] = String.format("%02d:00 %s - %02d:50 %s", displayHour, marker, displayHour, marker);
+            else
+                times[i] = String.format("%02d:00 %s - %02d:50 %s", displayHour, marker, displayEndHour, endMarker);
+        }
+    }
+
+    // ======================================================
+    // Decoders used by the parser before decodeSlot, kept here as reference
+    // ======================================================
+
+    private static int convertDay(String dayString)
+    {
+        for (int i = 0; i < 7; i++)
+            if (dayString.equalsIgnoreCase(CourseParser.DAYS[i]))
+                return i;
+
+        return -1;
+    }
+
+    private static int convertTime(String timeString)
+    {
+        String hourString = timeString.substring(0, 2);
+
+        int hour = Integer.parseInt(hourString);
+
+        if (timeString.contains("PM") && hour != 12)
+            hour += 12;
+
+        return hour;
+    }
+
+    public static final class Result
+    {
+        public double nanosPerRow;
+        public double allocationPerRow;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Cost of saving the subject list, for development use only.
+ *
+ * The save file is written with {@link SubjectList#writeFile(File, byte[], long[])} into a scratch directory
+ * next to the real save file, so it go through the same storage. Writing the temporary file, syncing it
+ * and renaming it in place are reported separately, since the sync usually dominate and vary most
+ * between devices.
+ */
+final class SaveBenchmark
+{
+    // subject lists: name, subject count, events per subject
+    private static final String[] LIST_NAMES   = new String[] { "typical", "heavy" };
+    private static final int[] LIST_SUBJECTS   = new int[]    { 7,         60      };
+    private static final int[] LIST_EVENTS     = new int[]    { 10,        200     };
+
+    private static final String[] PHASE_NAMES = new String[] { "write", "sync", "rename" };
+
+    // a save take milliseconds, a fixed number of rounds is enough
+    private static final int WARMUP_ROUNDS  = 5;
+    private static final int MEASURE_ROUNDS = 50;
+
+    private static final String DIRECTORY = "save_benchmark";
+
+    private static final String TAG = "SaveBenchmark";
+
+    // prevent user to instantiate using default constructor
+    private SaveBenchmark() { }
+
+    /**
+     * Save every subject list repeatedly and log the median and mean cost of each phase.
+     */
+    public static void runAll(Context context) throws IOException
+    {
+        File directory = new File(context.getFilesDir(), DIRECTORY);
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create " + directory);
+
+        try
+        {
+            for (int i = 0; i < LIST_NAMES.length; i++)
+            {
+                byte[] data = serialize(generateSubjects(LIST_SUBJECTS[i], LIST_EVENTS[i]));
+
+                long[][] nanos = run(directory, data);
+
+                for (int phase = 0; phase < SubjectList.WRITE_PHASE_COUNT; phase++)
+                {
+                    Log.i(TAG, String.format("%s (%d bytes) %s: median %.2f ms, mean %.2f ms", LIST_NAMES[i], data.length,
+                                             PHASE_NAMES[phase], median(nanos[phase]) / 1e6, mean(nanos[phase]) / 1e6));
+                }
+            }
+        }
+        finally
+        {
+            for (File file : directory.listFiles())
+                file.delete();
+
+            directory.delete();
+        }
+    }
+
+    /**
+     * Save the data repeatedly.
+     *
+     * @return time spent on every phase, indexed by phase then round.
+     */
+    public static long[][] run(File directory, byte[] data) throws IOException
+    {
+        long[] phaseNanos = new long[SubjectList.WRITE_PHASE_COUNT];
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++)
+            write(directory, data, phaseNanos);
+
+        long[][] nanos = new long[SubjectList.WRITE_PHASE_COUNT][MEASURE_ROUNDS];
+
+        for (int round = 0; round < MEASURE_ROUNDS; round++)
+        {
+            write(directory, data, phaseNanos);
+
+            for (int phase = 0; phase < SubjectList.WRITE_PHASE_COUNT; phase++)
+                nanos[phase][round] = phaseNanos[phase];
+        }
+
+        return nanos;
+    }
+
+    private static void write(File directory, byte[] data, long[] phaseNanos) throws IOException
+    {
+        if (!SubjectList.writeFile(directory, data, phaseNanos))
+            throw new IOException("Save failed, see the log of SubjectList.");
+    }
+
+    private static byte[] serialize(ArrayList<Subject> subjects) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        SubjectBinaryFormat.write(out, subjects);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Generate subjects with made up schedules and events, no student data is involved.
+     */
+    private static ArrayList<Subject> generateSubjects(int subjectCount, int eventCount)
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>(subjectCount);
+
+        for (int i = 0; i < subjectCount; i++)
+        {
+            Subject subject = new Subject(String.format("SUB%04d", i), "Subject Number " + i, "LC01", "TT01", 3, i);
+
+            // days from MON to SAT, hours from 8 AM to 5 PM
+            for (int j = 0; j < 4; j++)
+                subject.addSchedule(j % 2, 1 + (i + j) % 6, 8 + (i + j * 3) % 10, String.format("ROOM%03d", (i * 7 + j) % 200));
+
+            for (int j = 0; j < eventCount; j++)
+            {
+                int date = 20140000 + (j % 12) * 100 + 1 + j % 28;
+
+                subject.addEvent(new Event(i * 10000L + j, "Event " + j, "ROOM001", "Note of event " + j, j % 3, date, 800, 1000));
+            }
+
+            subjects.add(subject);
+        }
+
+        return subjects;
+    }
+
+    private static double median(long[] values)
+    {
+        long[] sorted = values.clone();
+
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+
+    private static double mean(long[] values)
+    {
+        long sum = 0;
+
+        for (long value : values)
+            sum += value;
+
+        return (double)sum / values.length;
+    }
+}
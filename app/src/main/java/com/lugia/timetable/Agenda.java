@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Upcoming classes and events of every subject merged into a single stream ordered by start time.
+ *
+ * Every subject contribute a lazy class source, events of all subject come as one more source already
+ * ordered by {@link EventDateIndex}. The sources are merged with a heap keyed by their next start time.
+ * Only the items taken are ever expanded, so the first page is ready without walking through the whole
+ * semester.
+ */
+public final class Agenda
+{
+    private final PriorityQueue<Source> mQueue;
+
+    /**
+     * @param subjects subjects to be shown, should not be modified while the agenda is in use.
+     * @param eventIndex index of the events of the subjects, only read in the constructor.
+     * @param fromMinute only item start at or after this epoch minute is included.
+     */
+    Agenda(Semester semester, List<Subject> subjects, EventDateIndex eventIndex, long fromMinute)
+    {
+        mQueue = new PriorityQueue<Source>(subjects.size() + 1, SOURCE_COMPARATOR);
+
+        int order = 0;
+
+        for (Subject subject : subjects)
+            offer(new ClassSource(order++, subject, semester.occurrences(subject, fromMinute)));
+
+        offer(new EventSource(order, eventIndex, fromMinute));
+    }
+
+    private void offer(Source source)
+    {
+        // exhausted source never join the heap
+        if (source.mHead >= 0)
+            mQueue.offer(source);
+    }
+
+    public boolean hasNext()
+    {
+        return !mQueue.isEmpty();
+    }
+
+    public Item next()
+    {
+        Source source = mQueue.poll();
+
+        if (source == null)
+            throw new NoSuchElementException();
+
+        Item item = source.take();
+
+        offer(source);
+
+        return item;
+    }
+
+    /**
+     * @return at most count item following the last taken one, empty if there is nothing left.
+     */
+    public ArrayList<Item> nextPage(int count)
+    {
+        ArrayList<Item> page = new ArrayList<Item>(count);
+
+        while (page.size() < count && hasNext())
+            page.add(next());
+
+        return page;
+    }
+
+    // order by start time, source created earlier go first on tie so the order is stable
+    private static final Comparator<Source> SOURCE_COMPARATOR = new Comparator<Source>()
+    {
+        @Override
+        public int compare(Source lhs, Source rhs)
+        {
+            if (lhs.mHead != rhs.mHead)
+                return lhs.mHead < rhs.mHead ? -1 : 1;
+
+            return lhs.mOrder < rhs.mOrder ? -1 : (lhs.mOrder == rhs.mOrder ? 0 : 1);
+        }
+    };
+
+    private static abstract class Source
+    {
+        final int mOrder;
+
+        // start time of the next item, -1 when exhausted
+        long mHead = -1;
+
+        Source(int order)
+        {
+            mOrder = order;
+        }
+
+        /**
+         * Return the item at head and move to the next one.
+         */
+        abstract Item take();
+    }
+
+    private static final class ClassSource extends Source
+    {
+        private final Subject mSubject;
+        private final Semester.OccurrenceIterator mIterator;
+
+        ClassSource(int order, Subject subject, Semester.OccurrenceIterator iterator)
+        {
+            super(order);
+
+            mSubject  = subject;
+            mIterator = iterator;
+            mHead     = iterator.peek();
+        }
+
+        @Override
+        Item take()
+        {
+            long start = mIterator.next();
+            long slot = mIterator.getScheduleSlot();
+
+            Item item = new Item(Item.TYPE_CLASS, mSubject, start, start + Schedule.getLength(slot) * 60,
+                                 slot, mSubject.getScheduleRoom(mIterator.getScheduleIndex()), null);
+
+            mHead = mIterator.peek();
+
+            return item;
+        }
+    }
+
+    private static final class EventSource extends Source
+    {
+        // events of all subject start from the epoch minute, ordered by start time, with their subject
+        private final ArrayList<Event> mEvents;
+        private final ArrayList<Subject> mSubjects = new ArrayList<Subject>();
+
+        private int mPosition = 0;
+
+        EventSource(int order, EventDateIndex index, long fromMinute)
+        {
+            super(order);
+
+            int date = Event.fromEpochDay(Semester.getEpochDay(fromMinute));
+
+            mEvents = index.eventsFrom(date, Semester.getTime(fromMinute), mSubjects);
+
+            updateHead();
+        }
+
+        private void updateHead()
+        {
+            if (mPosition < mEvents.size())
+            {
+                Event event = mEvents.get(mPosition);
+
+                mHead = Semester.toEpochMinute(event.getEpochDay(), event.getTimeStart());
+            }
+            else
+                mHead = -1;
+        }
+
+        @Override
+        Item take()
+        {
+            Event event = mEvents.get(mPosition);
+            Subject subject = mSubjects.get(mPosition);
+            long start = mHead;
+
+            mPosition++;
+            updateHead();
+
+            long end = Semester.toEpochMinute(event.getEpochDay(), event.getTimeEnd());
+
+            return new Item(Item.TYPE_EVENT, subject, start, Math.max(start, end), 0, event.getVenue(), event);
+        }
+    }
+
+    /**
+     * A class or an event in the agenda.
+     */
+    public static final class Item
+    {
+        public static final int TYPE_CLASS = 0;
+        public static final int TYPE_EVENT = 1;
+
+        private final int mType;
+        private final Subject mSubject;
+
+        private final long mStart;
+        private final long mEnd;
+
+        private final long mScheduleSlot;
+        private final String mVenue;
+
+        private final Event mEvent;
+
+        Item(int type, Subject subject, long start, long end, long scheduleSlot, String venue, Event event)
+        {
+            mType         = type;
+            mSubject      = subject;
+            mStart        = start;
+            mEnd          = end;
+            mScheduleSlot = scheduleSlot;
+            mVenue        = venue;
+            mEvent        = event;
+        }
+
+        public int getType()
+        {
+            return mType;
+        }
+
+        public Subject getSubject()
+        {
+            return mSubject;
+        }
+
+        /**
+         * @return start time as epoch minute, see {@link Semester}.
+         */
+        public long getStart()
+        {
+            return mStart;
+        }
+
+        /**
+         * @return end time as epoch minute, see {@link Semester}.
+         */
+        public long getEnd()
+        {
+            return mEnd;
+        }
+
+        /**
+         * @return packed schedule slot of a class, unpack it with the static getter of {@link Schedule}.
+         */
+        public long getScheduleSlot()
+        {
+            return mScheduleSlot;
+        }
+
+        /**
+         * @return room of a class or venue of an event.
+         */
+        public String getVenue()
+        {
+            return mVenue;
+        }
+
+        /**
+         * @return the event, or null if this is a class.
+         */
+        public Event getEvent()
+        {
+            return mEvent;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import saved ICEMS course detail pages of many students at once.
+ *
+ * Every page is parsed by {@link StreamCourseParser} on a fixed pool of worker threads, one thread per
+ * core by default. The work queue is bounded, when it is full the submitting thread parse the page by
+ * itself, so a huge directory never pile up in memory.
+ */
+public class BulkCourseImporter
+{
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+    private static final String TAG = "BulkCourseImporter";
+
+    private final int mThreadCount;
+    private final String mCharset;
+
+    private PageFingerprintCache mFingerprintCache = null;
+
+    public BulkCourseImporter()
+    {
+        this(Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * @param threadCount number of worker thread.
+     * @param charset charset of the pages, or null to detect it from every page.
+     */
+    public BulkCourseImporter(int threadCount, String charset)
+    {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Invalid thread count, should larger than or equal to 1.");
+
+        mThreadCount = threadCount;
+        mCharset     = charset;
+    }
+
+    /**
+     * Set the cache used to skip parsing of page that is identical to the last import of the same student.
+     */
+    public void setFingerprintCache(PageFingerprintCache cache)
+    {
+        mFingerprintCache = cache;
+    }
+
+    /**
+     * Import every file in the directory, the file name without extension is used as student key.
+     *
+     * When more than one file share the same key, only the first one in name order is imported, the
+     * others are reported as error.
+     */
+    public Result importDirectory(File directory)
+    {
+        HashMap<String, File> pages = new HashMap<String, File>();
+        ArrayList<PageError> duplicates = new ArrayList<PageError>();
+
+        File[] files = directory.listFiles();
+
+        if (files != null)
+        {
+            // listing order is not defined, sort it so the same file win every time
+            Arrays.sort(files);
+
+            for (File file : files)
+            {
+                if (!file.isFile())
+                    continue;
+
+                String name = file.getName();
+                int dot = name.lastIndexOf('.');
+                String key = dot > 0 ? name.substring(0, dot) : name;
+
+                File previous = pages.get(key);
+
+                if (previous != null)
+                    duplicates.add(new PageError(key, file, "Duplicate student key, " + previous.getName() + " is imported instead.", null));
+                else
+                    pages.put(key, file);
+            }
+        }
+
+        Result result = importPages(pages);
+
+        result.mErrors.addAll(duplicates);
+
+        return result;
+    }
+
+    /**
+     * Import the pages, keyed by student.
+     *
+     * @param pages map of student key to the saved course detail page.
+     *
+     * @return subject list of every successfully parsed student and error report of every failed page.
+     */
+    public Result importPages(Map<String, File> pages)
+    {
+        Result result = new Result();
+
+        if (pages.isEmpty())
+            return result;
+
+        int threadCount = Math.min(mThreadCount, pages.size());
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                                                             new ArrayBlockingQueue<Runnable>(threadCount * QUEUE_SIZE_PER_THREAD),
+                                                             new ThreadPoolExecutor.CallerRunsPolicy());
+
+        CompletionService<PageResult> service = new ExecutorCompletionService<PageResult>(executor);
+
+        // task of every submitted page, to report the page whose task failed
+        HashMap<Future<PageResult>, ParseTask> tasks = new HashMap<Future<PageResult>, ParseTask>();
+
+        try
+        {
+            for (Map.Entry<String, File> entry : pages.entrySet())
+            {
+                ParseTask task = new ParseTask(entry.getKey(), entry.getValue());
+
+                tasks.put(service.submit(task), task);
+            }
+
+            for (int i = 0; i < pages.size(); i++)
+            {
+                Future<PageResult> future = service.take();
+                PageResult pageResult;
+
+                try
+                {
+                    pageResult = future.get();
+                }
+                catch (ExecutionException e)
+                {
+                    // ParseTask never throw, something went really wrong, but the other pages are still fine
+                    Log.e(TAG, "Error on import!", e);
+
+                    ParseTask task = tasks.get(future);
+
+                    result.mErrors.add(new PageError(task.mKey, task.mFile, "Error on parsing page.", e.getCause()));
+                    continue;
+                }
+
+                if (pageResult.subjects != null)
+                    result.mSubjects.put(pageResult.key, pageResult.subjects);
+                else
+                    result.mErrors.add(pageResult.error);
+
+                if (pageResult.unchanged)
+                    result.mUnchangedKeys.add(pageResult.key);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Log.e(TAG, "Import interrupted!", e);
+
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return result;
+    }
+
+    private final class ParseTask implements Callable<PageResult>
+    {
+        private final String mKey;
+        private final File mFile;
+
+        public ParseTask(String key, File file)
+        {
+            mKey  = key;
+            mFile = file;
+        }
+
+        public PageResult call()
+        {
+            PageResult result = new PageResult(mKey);
+
+            try
+            {
+                if (mFingerprintCache == null)
+                    result.subjects = parseFile();
+                else
+                    result.subjects = parseFileWithCache(result);
+
+                if (result.subjects == null)
+                    result.error = new PageError(mKey, mFile, "Page is not in expected format.", null);
+            }
+            catch (Exception e)
+            {
+                result.subjects = null;
+                result.error = new PageError(mKey, mFile, "Error on parsing page.", e);
+            }
+
+            return result;
+        }
+
+        private ArrayList<Subject> parseFile() throws IOException
+        {
+            InputStream in = new FileInputStream(mFile);
+
+            try
+            {
+                return CourseParser.tryParse(in, mCharset);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        private ArrayList<Subject> parseFileWithCache(PageResult result) throws IOException
+        {
+            // hashing is far cheaper than parsing, read the page once and hash it before anything else
+            byte[] data = readFile();
+
+            String fingerprint = PageFingerprintCache.fingerprint(data, 0, data.length);
+
+            ArrayList<Subject> subjects = mFingerprintCache.get(mKey, fingerprint);
+
+            if (subjects != null)
+            {
+                result.unchanged = true;
+
+                return subjects;
+            }
+
+            subjects = CourseParser.tryParse(new ByteArrayInputStream(data), mCharset);
+
+            if (subjects != null)
+                mFingerprintCache.put(mKey, fingerprint, subjects);
+            else
+                mFingerprintCache.remove(mKey);
+
+            return subjects;
+        }
+
+        private byte[] readFile() throws IOException
+        {
+            InputStream in = new FileInputStream(mFile);
+
+            try
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int)mFile.length());
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while ((count = in.read(buffer)) != -1)
+                    out.write(buffer, 0, count);
+
+                return out.toByteArray();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    private static final class PageResult
+    {
+        final String key;
+
+        ArrayList<Subject> subjects;
+        PageError error;
+
+        boolean unchanged = false;
+
+        PageResult(String key)
+        {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Result of a bulk import.
+     */
+    public static final class Result
+    {
+        private final HashMap<String, ArrayList<Subject>> mSubjects = new HashMap<String, ArrayList<Subject>>();
+        private final ArrayList<PageError> mErrors = new ArrayList<PageError>();
+        private final ArrayList<String> mUnchangedKeys = new ArrayList<String>();
+
+        public HashMap<String, ArrayList<Subject>> getSubjects()
+        {
+            return mSubjects;
+        }
+
+        public ArrayList<PageError> getErrors()
+        {
+            return mErrors;
+        }
+
+        /**
+         * @return key of the students whose page is identical to the last import, their result come from cache.
+         */
+        public ArrayList<String> getUnchangedKeys()
+        {
+            return mUnchangedKeys;
+        }
+    }
+
+    /**
+     * Error report of a page that cannot be parsed.
+     */
+    public static final class PageError
+    {
+        private final String mKey;
+        private final File mFile;
+        private final String mMessage;
+        private final Throwable mCause;
+
+        public PageError(String key, File file, String message, Throwable cause)
+        {
+            mKey     = key;
+            mFile    = file;
+            mMessage = message;
+            mCause   = cause;
+        }
+
+        public String getKey()
+        {
+            return mKey;
+        }
+
+        public File getFile()
+        {
+            return mFile;
+        }
+
+        public String getMessage()
+        {
+            return mMessage;
+        }
+
+        public Throwable getCause()
+        {
+            return mCause;
+        }
+    }
+}
@@ -19,11 +19,27 @@ package com.lugia.timetable;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Collector;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 // IMPORTATNT CORE FILE
 // DO NOT MODIFY THIS IF YOU NOT SURE WHAT YOU'RE DOING
@@ -52,6 +68,51 @@ public class CourseParser
         "SAT"
     };
     
+    // day name packed as 3 lower case characters
+    private static final int DAY_KEY_SUN = ('s' << 16) | ('u' << 8) | 'n';
+    private static final int DAY_KEY_MON = ('m' << 16) | ('o' << 8) | 'n';
+    private static final int DAY_KEY_TUE = ('t' << 16) | ('u' << 8) | 'e';
+    private static final int DAY_KEY_WED = ('w' << 16) | ('e' << 8) | 'd';
+    private static final int DAY_KEY_THU = ('t' << 16) | ('h' << 8) | 'u';
+    private static final int DAY_KEY_FRI = ('f' << 16) | ('r' << 8) | 'i';
+    private static final int DAY_KEY_SAT = ('s' << 16) | ('a' << 8) | 't';
+    
+    // same default as HTTP text content, and what EntityUtils.toString() use
+    public static final String DEFAULT_CHARSET = "ISO-8859-1";
+    
+    // how much of the page is looked at for the charset declaration
+    private static final int CHARSET_SNIFF_SIZE = 2048;
+    
+    // how much of the page is given to the strategies for layout fingerprinting
+    private static final int FINGERPRINT_SIZE = 16 * 1024;
+    
+    // newly registered strategy come first, so it take priority over the older layout
+    private static final CopyOnWriteArrayList<CourseParserStrategy> STRATEGIES = new CopyOnWriteArrayList<CourseParserStrategy>();
+    
+    // default layout, also used when no strategy recognize the page
+    private static final CourseParserStrategy ICEMS_STRATEGY = new IcemsLayoutStrategy();
+    
+    static
+    {
+        STRATEGIES.add(ICEMS_STRATEGY);
+    }
+    
+    private static final String COURSE_ANCHOR   = "registered course";
+    private static final String SCHEDULE_ANCHOR = "schedule";
+    
+    // compiled form of "tr[bgcolor*=#ffffff]", reused for every page
+    private static final Evaluator ROW_EVALUATOR = new Evaluator()
+    {
+        private final Evaluator mTag = new Evaluator.Tag("tr");
+        private final Evaluator mColor = new Evaluator.AttributeWithValueContaining("bgcolor", "#ffffff");
+        
+        @Override
+        public boolean matches(Element root, Element element)
+        {
+            return mTag.matches(root, element) && mColor.matches(root, element);
+        }
+    };
+    
     private static final String TAG = "CourseParser";
     
     // prevent user to instantiate using default constructor
@@ -61,8 +122,25 @@ public class CourseParser
     {
         Document document = Jsoup.parse(source);
         
-        Elements courseElements = findCourseElements(document);
-        Elements scheduleElements = findScheduleElements(document);
+        // locate both anchor in a single traversal of the document
+        AnchorVisitor visitor = new AnchorVisitor();
+        new NodeTraversor(visitor).traverse(document);
+        
+        // should have only 1 element for each anchor
+        if (visitor.mCourseAnchors.size() != 1)
+        {
+            Log.e(TAG, String.format("Expected 1 element for reg course, %d retrieved now.", visitor.mCourseAnchors.size()));
+            return null;
+        }
+        
+        if (visitor.mScheduleAnchors.size() != 1)
+        {
+            Log.e(TAG, String.format("Expected 1 element for schedule, %d retrieved now.", visitor.mScheduleAnchors.size()));
+            return null;
+        }
+        
+        Elements courseElements = findRowElements(visitor.mCourseAnchors.iterator().next());
+        Elements scheduleElements = findRowElements(visitor.mScheduleAnchors.iterator().next());
         
         // make sure both of the elements are exists
         if (courseElements == null || scheduleElements == null)
@@ -76,62 +154,214 @@ public class CourseParser
         return subjectList;
     }
     
-    private static Elements findCourseElements(final Document document)
+    /**
+     * Collect elements that own a text containing the anchor text, same as getElementsContainingOwnText()
+     * but for both anchors at once.
+     */
+    private static final class AnchorVisitor implements NodeVisitor
     {
-        // get the registered course
-        Elements elems = document.getElementsContainingOwnText("Registered Course");
+        final LinkedHashSet<Element> mCourseAnchors = new LinkedHashSet<Element>();
+        final LinkedHashSet<Element> mScheduleAnchors = new LinkedHashSet<Element>();
         
-        // should have only 1 element
-        if (elems.size() != 1)
+        public void head(Node node, int depth)
         {
-            Log.e(TAG, String.format("Expected 1 element for reg course, %d retrieved now.", elems.size()));
-            return null;
+            if (!(node instanceof TextNode))
+                return;
+            
+            String text = ((TextNode)node).text().toLowerCase(Locale.US);
+            
+            if (text.contains(COURSE_ANCHOR))
+                mCourseAnchors.add((Element)node.parent());
+            
+            if (text.contains(SCHEDULE_ANCHOR))
+                mScheduleAnchors.add((Element)node.parent());
         }
         
-        Element elem = elems.first();
+        public void tail(Node node, int depth) { /* Do Nothing */ }
+    }
+    
+    /**
+     * Register parser for a new page layout, it is tried before all existing strategies.
+     */
+    public static void registerStrategy(CourseParserStrategy strategy)
+    {
+        STRATEGIES.add(0, strategy);
+    }
+    
+    /**
+     * Parse the page directly from the stream, the page is parsed while it is still being read, so it never
+     * exists as a whole in memory.
+     * 
+     * The beginning of the page is used to choose the {@link CourseParserStrategy}, if no strategy recognize
+     * the layout the page is given to the ICEMS strategy, which reject it if the anchors are not found.
+     * 
+     * @param in the stream of the page, it is not closed by this method.
+     * @param charset charset of the page, or null to detect it from the page.
+     * 
+     * @return list of subject, or null if the page is not in expected format.
+     */
+    public static ArrayList<Subject> tryParse(InputStream in, String charset) throws IOException
+    {
+        BufferedInputStream stream = new BufferedInputStream(in, CHARSET_SNIFF_SIZE * 2);
         
-        // try to find the parent table
-        while (true)
+        if (charset == null || !isSupportedCharset(charset))
+            charset = detectCharset(stream);
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, charset), FINGERPRINT_SIZE * 2);
+        
+        CourseParserStrategy strategy = findStrategy(reader);
+        
+        if (strategy == null)
         {
-            elem = elem.parent();
-            
-            if (elem.tagName().equals("table"))
-                break;
+            // the fingerprint is only a hint, the page might still be parsable by the current layout
+            Log.w(TAG, "Unknown page layout, no parser strategy match it, fall back to ICEMS layout.");
+            strategy = ICEMS_STRATEGY;
         }
         
-        // course detail are on second table
-        elem = elem.nextElementSibling();
+        Log.d(TAG, "Parse using strategy: " + strategy.getName());
         
-        return elem.getElementsByTag("table").get(1).select("tr[bgcolor*=#ffffff]");
+        return strategy.parse(reader);
     }
     
-    private static Elements findScheduleElements(final Document document)
+    private static CourseParserStrategy findStrategy(BufferedReader reader) throws IOException
     {
-        // get the schedule
-        Elements elems = document.getElementsContainingOwnText("Schedule");
+        char[] head = new char[FINGERPRINT_SIZE];
+        
+        reader.mark(FINGERPRINT_SIZE);
+        
+        int length = 0;
+        int count;
+        
+        while (length < head.length && (count = reader.read(head, length, head.length - length)) != -1)
+            length += count;
+        
+        reader.reset();
         
-        // should have only 1 element
-        if (elems.size() != 1)
+        String headString = new String(head, 0, length);
+        
+        for (CourseParserStrategy strategy : STRATEGIES)
+            if (strategy.matches(headString))
+                return strategy;
+        
+        return null;
+    }
+    
+    /**
+     * Strategy for the current ICEMS layout. The "Registered Course" header can be pushed far down the page by
+     * the script and style in the head, so the page is recognized by the marker that sit at the top of it.
+     */
+    private static final class IcemsLayoutStrategy implements CourseParserStrategy
+    {
+        // the title, and the page name used by the form action and links
+        private static final String[] MARKERS = new String[] { "<title>course details", "crdetails_", "registered course" };
+        
+        public String getName()
         {
-            Log.e(TAG, String.format("Expected 1 element for schedule, %d retrieved now.", elems.size()));
-            return null;
+            return "ICEMS crdetails_02";
+        }
+        
+        public boolean matches(String head)
+        {
+            String lower = head.toLowerCase(Locale.US);
+            
+            for (String marker : MARKERS)
+                if (lower.contains(marker))
+                    return true;
+            
+            return false;
+        }
+        
+        public ArrayList<Subject> parse(Reader reader) throws IOException
+        {
+            return StreamCourseParser.tryParse(reader);
+        }
+    }
+    
+    private static String detectCharset(BufferedInputStream stream) throws IOException
+    {
+        byte[] head = new byte[CHARSET_SNIFF_SIZE];
+        
+        stream.mark(CHARSET_SNIFF_SIZE);
+        
+        int length = 0;
+        int count;
+        
+        while (length < head.length && (count = stream.read(head, length, head.length - length)) != -1)
+            length += count;
+        
+        stream.reset();
+        
+        // byte order mark
+        if (length >= 3 && (head[0] & 0xff) == 0xef && (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf)
+            return "UTF-8";
+        
+        // look for <meta ... charset=xxx>, the declaration itself is always ASCII
+        String text = new String(head, 0, length, DEFAULT_CHARSET).toLowerCase(Locale.US);
+        
+        int index = text.indexOf("charset=");
+        
+        if (index != -1)
+        {
+            int start = index + "charset=".length();
+            
+            if (start < text.length() && (text.charAt(start) == '"' || text.charAt(start) == '\''))
+                start++;
+            
+            int end = start;
+            
+            while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || "-_.:".indexOf(text.charAt(end)) != -1))
+                end++;
+            
+            String charset = text.substring(start, end);
+            
+            if (isSupportedCharset(charset))
+                return charset;
+            
+            Log.w(TAG, "Unsupported charset " + charset + ", fall back to default.");
         }
         
-        Element elem = elems.first();
+        return DEFAULT_CHARSET;
+    }
+    
+    private static boolean isSupportedCharset(String charset)
+    {
+        try
+        {
+            return charset.length() > 0 && Charset.isSupported(charset);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // illegal charset name
+            return false;
+        }
+    }
+    
+    private static Elements findRowElements(Element anchor)
+    {
+        Element elem = anchor;
         
         // try to find the parent table
-        while (true)
+        do
         {
             elem = elem.parent();
             
-            if (elem.tagName().equals("table"))
-                break;
+            if (elem == null)
+                return null;
         }
+        while (!elem.tagName().equals("table"));
         
-        // schedule detail are on second table
+        // detail are on second table
         elem = elem.nextElementSibling();
         
-        return elem.getElementsByTag("table").get(1).select("tr[bgcolor*=#ffffff]");
+        if (elem == null)
+            return null;
+        
+        Elements tables = elem.getElementsByTag("table");
+        
+        if (tables.size() < 2)
+            return null;
+        
+        return Collector.collect(ROW_EVALUATOR, tables.get(1));
     }
     
     private static void parseCourseList(Elements courseElements, ArrayList<Subject> list)
@@ -140,35 +370,14 @@ public class CourseParser
         
         for (Element e : courseElements)
         {
-            Elements c = e.children();
-            
-            /* 0 - index
-             * 1 - subject code
-             * 2 - subject description
-             * 3 - lecture section
-             * 4 - tutorial section
-             * 5 - credit hour
-             */
-            if (c.size() != 6)
-                continue;
-            
-            String subjectCode        = c.get(1).text().trim();
-            String subjectDescription = c.get(2).text().trim(); 
-            String lectureSection     = c.get(3).text().trim();
-            String tutorialSection    = c.get(4).text().trim(); 
-            String creditsHourString  = c.get(5).text().trim();
-            
-            if (lectureSection.equals("-"))
-                lectureSection = null;
+            String[] cells = getCellTexts(e);
             
-            if (tutorialSection.equals("-"))
-                tutorialSection = null;
+            Subject subject = parseCourseRow(cells, cells.length, count);
             
-            int creditsHour = Integer.parseInt(creditsHourString);
-            
-            int color = count++; 
+            if (subject == null)
+                continue;
             
-            Subject subject = new Subject(subjectCode, subjectDescription, lectureSection, tutorialSection, creditsHour, color);
+            count++;
             
             list.add(subject);
         }
@@ -176,13 +385,103 @@ public class CourseParser
     
     private static void parseScheduleList(Elements scheduleElements, ArrayList<Subject> list)
     {
-        Subject currentSubject = null;
-        int currentSection  = -1;
+        ScheduleRowParser parser = new ScheduleRowParser(list);
         
         for (Element e : scheduleElements)
         {
-            Elements c = e.children();
+            String[] cells = getCellTexts(e);
             
+            parser.parseRow(cells, cells.length);
+        }
+    }
+    
+    private static String[] getCellTexts(Element row)
+    {
+        Elements c = row.children();
+        
+        String[] cells = new String[c.size()];
+        
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = c.get(i).text().trim();
+        
+        return cells;
+    }
+    
+    /**
+     * Create a subject from the cell texts of a registered course row.
+     * 
+     * @param cells the trimmed cell texts of the row.
+     * @param count number of valid cells in the array.
+     * @param color color index of the subject.
+     * 
+     * @return the subject, or null if the row is not a course row.
+     */
+    static Subject parseCourseRow(String[] cells, int count, int color)
+    {
+        /* 0 - index
+         * 1 - subject code
+         * 2 - subject description
+         * 3 - lecture section
+         * 4 - tutorial section
+         * 5 - credit hour
+         */
+        if (count != 6)
+            return null;
+        
+        String subjectCode        = cells[1];
+        String subjectDescription = cells[2];
+        String lectureSection     = cells[3];
+        String tutorialSection    = cells[4];
+        String creditsHourString  = cells[5];
+        
+        if (lectureSection.equals("-"))
+            lectureSection = null;
+        
+        if (tutorialSection.equals("-"))
+            tutorialSection = null;
+        
+        int creditsHour;
+        
+        try
+        {
+            creditsHour = Integer.parseInt(creditsHourString);
+        }
+        catch (NumberFormatException e)
+        {
+            Log.w(TAG, "Invalid credit hour for " + subjectCode + ", row skipped.");
+            return null;
+        }
+        
+        // same subject and section appear on the page of every student taking it
+        subjectCode     = StringPool.intern(subjectCode);
+        lectureSection  = StringPool.intern(lectureSection);
+        tutorialSection = StringPool.intern(tutorialSection);
+        
+        return new Subject(subjectCode, subjectDescription, lectureSection, tutorialSection, creditsHour, color);
+    }
+    
+    /**
+     * Parser for the rows of schedule table. ICEMS only show the subject code on the first row of a subject,
+     * and the section on the first row of a section, so the state have to be carried from row to row.
+     */
+    static final class ScheduleRowParser
+    {
+        private final ArrayList<Subject> mSubjectList;
+        private final SubjectIndex mSubjectIndex = new SubjectIndex();
+        
+        // number of subject from the list that already added to the index
+        private int mIndexedCount = 0;
+        
+        private Subject mCurrentSubject = null;
+        private int mCurrentSection = -1;
+        
+        ScheduleRowParser(ArrayList<Subject> list)
+        {
+            mSubjectList = list;
+        }
+        
+        void parseRow(String[] cells, int count)
+        {
             /* 0 | 0 | 0 - index
              * 1 |   |   - subject code
              * 2 | 1 |   - section
@@ -190,36 +489,31 @@ public class CourseParser
              * 4 | 3 | 2 - time
              * 5 | 4 | 3 - room
              */
-            switch (c.size())
+            switch (count)
             {
                 case TYPE_NEW_COURSE:
                 {
-                    String subjectCode = c.get(1).text().trim();
-                    String section     = c.get(2).text().trim();
-                    String dayString   = c.get(3).text().trim();
-                    String timeString  = c.get(4).text().trim();
-                    String room        = c.get(5).text().trim();
+                    String subjectCode = cells[1];
+                    String section     = cells[2];
+                    String dayString   = cells[3];
+                    String timeString  = cells[4];
+                    String room        = cells[5];
                     
-                    int day = convertDay(dayString);
-                    int time = convertTime(timeString);
-
-                    for (Subject subject : list)
-                    {
-                        if (subject.getSubjectCode().equalsIgnoreCase(subjectCode))
-                        {
-                            currentSubject = subject;
-                            break;
-                        }
-                    }
+                    int slot = decodeSlot(dayString, timeString);
                     
-                    if (currentSubject != null)
+                    Subject subject = findSubject(subjectCode);
+                    
+                    if (subject != null)
+                        mCurrentSubject = subject;
+                    
+                    if (mCurrentSubject != null)
                     {
                         if (section.contains("LEC"))
-                            currentSection = Schedule.LECTURE_SECTION;
+                            mCurrentSection = Schedule.LECTURE_SECTION;
                         else if (section.contains("TUT"))
-                            currentSection = Schedule.TUTORIAL_SECTION;
+                            mCurrentSection = Schedule.TUTORIAL_SECTION;
                         
-                        currentSubject.addSchedule(currentSection, day, time, room);
+                        addSchedule(slot, room);
                     }
                     
                     break;
@@ -227,22 +521,21 @@ public class CourseParser
                 
                 case TYPE_NEW_SECTION:
                 {
-                    String section     = c.get(1).text().trim();
-                    String dayString   = c.get(2).text().trim();
-                    String timeString  = c.get(3).text().trim();
-                    String room        = c.get(4).text().trim();
+                    String section     = cells[1];
+                    String dayString   = cells[2];
+                    String timeString  = cells[3];
+                    String room        = cells[4];
                     
-                    int day = convertDay(dayString);
-                    int time = convertTime(timeString);
+                    int slot = decodeSlot(dayString, timeString);
                     
-                    if (currentSubject != null)
+                    if (mCurrentSubject != null)
                     {
                         if (section.contains("LEC"))
-                            currentSection = Schedule.LECTURE_SECTION;
+                            mCurrentSection = Schedule.LECTURE_SECTION;
                         else if (section.contains("TUT"))
-                            currentSection = Schedule.TUTORIAL_SECTION;
+                            mCurrentSection = Schedule.TUTORIAL_SECTION;
                         
-                        currentSubject.addSchedule(currentSection, day, time, room);
+                        addSchedule(slot, room);
                     }
                     
                     break;
@@ -250,39 +543,147 @@ public class CourseParser
                 
                 case TYPE_NEW_TIME:
                 {
-                    String dayString   = c.get(1).text().trim();
-                    String timeString  = c.get(2).text().trim();
-                    String room        = c.get(3).text().trim();
+                    String dayString   = cells[1];
+                    String timeString  = cells[2];
+                    String room        = cells[3];
                     
-                    int day = convertDay(dayString);
-                    int time = convertTime(timeString);
+                    int slot = decodeSlot(dayString, timeString);
                     
-                    if (currentSubject != null)
-                        currentSubject.addSchedule(currentSection, day, time, room);
+                    if (mCurrentSubject != null)
+                        addSchedule(slot, room);
                     
                     break;
                 }
             }
         }
+        
+        private void addSchedule(int slot, String room)
+        {
+            if (slot == -1)
+            {
+                Log.w(TAG, "Invalid day or time for " + mCurrentSubject.getSubjectCode() + ", row skipped.");
+                return;
+            }
+            
+            mCurrentSubject.addSchedule(mCurrentSection, getSlotDay(slot), getSlotTime(slot), StringPool.intern(room));
+        }
+        
+        private Subject findSubject(String subjectCode)
+        {
+            // subject may still be added to the list while parsing, index the new one first
+            while (mIndexedCount < mSubjectList.size())
+                mSubjectIndex.put(mSubjectList.get(mIndexedCount++));
+            
+            return mSubjectIndex.get(subjectCode);
+        }
+    }
+    
+    /**
+     * Decode the day and time cell of a schedule row into a packed slot value.
+     * 
+     * @return the slot, use {@link #getSlotDay(int)} and {@link #getSlotTime(int)} to unpack it,
+     *         or -1 if either of the cell is invalid.
+     */
+    static int decodeSlot(CharSequence dayString, CharSequence timeString)
+    {
+        int day = decodeDay(dayString);
+        int time = decodeTime(timeString);
+        
+        if (day == -1 || time == -1)
+            return -1;
+        
+        return (day << 8) | time;
+    }
+    
+    static int getSlotDay(int slot)
+    {
+        return slot >> 8;
+    }
+    
+    static int getSlotTime(int slot)
+    {
+        return slot & 0xff;
     }
     
-    private static int convertDay(String dayString)
+    /**
+     * Decode day cell such as "MON", case insensitive.
+     * 
+     * @return index of the day in {@link #DAYS}, or -1 if it is not a valid day.
+     */
+    static int decodeDay(CharSequence dayString)
     {
-        for (int i = 0; i < 7; i++)
-            if (dayString.equalsIgnoreCase(DAYS[i]))
-                return i;
+        if (dayString.length() != 3)
+            return -1;
         
-        return -1;
+        int key = 0;
+        
+        for (int i = 0; i < 3; i++)
+        {
+            // ASCII letter only, setting the 0x20 bit turn it into lower case
+            int c = dayString.charAt(i) | 0x20;
+            
+            if (c < 'a' || c > 'z')
+                return -1;
+            
+            key = (key << 8) | c;
+        }
+        
+        switch (key)
+        {
+            case DAY_KEY_SUN: return 0;
+            case DAY_KEY_MON: return 1;
+            case DAY_KEY_TUE: return 2;
+            case DAY_KEY_WED: return 3;
+            case DAY_KEY_THU: return 4;
+            case DAY_KEY_FRI: return 5;
+            case DAY_KEY_SAT: return 6;
+            default:          return -1;
+        }
     }
     
-    private static int convertTime(String timeString)
+    /**
+     * Decode the starting hour of time cell such as "08:00 AM" or "02:00 PM - 03:00 PM".
+     * 
+     * @return hour of day in 24 hour format, or -1 if it is not a valid time.
+     */
+    static int decodeTime(CharSequence timeString)
     {
-        String hourString = timeString.substring(0, 2);
+        final int length = timeString.length();
+        
+        if (length < 2)
+            return -1;
+        
+        int h0 = timeString.charAt(0) - '0';
+        int h1 = timeString.charAt(1) - '0';
+        
+        if (h0 < 0 || h0 > 9 || h1 < 0 || h1 > 9)
+            return -1;
+        
+        int hour = h0 * 10 + h1;
         
-        int hour = Integer.parseInt(hourString);
+        // the first AM/PM marker belong to the starting time
+        for (int i = 2; i < length - 1; i++)
+        {
+            char c = timeString.charAt(i);
+            char next = timeString.charAt(i + 1);
+            
+            if (next != 'M' && next != 'm')
+                continue;
+            
+            if (c == 'P' || c == 'p')
+            {
+                if (hour != 12)
+                    hour += 12;
+                
+                break;
+            }
+            
+            if (c == 'A' || c == 'a')
+                break;
+        }
         
-        if (timeString.contains("PM") && hour != 12)
-            hour += 12;
+        if (hour > 23)
+            return -1;
         
         return hour;
     }
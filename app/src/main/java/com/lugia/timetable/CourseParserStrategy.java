@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Parser for one version of the ICEMS course detail page layout.
+ *
+ * Strategies are registered to {@link CourseParser}, which pick the first strategy that recognize the
+ * beginning of the page, so a layout change only cost a fingerprint check instead of a failed parse.
+ */
+public interface CourseParserStrategy
+{
+    /**
+     * @return name of the layout, for logging.
+     */
+    public String getName();
+
+    /**
+     * Cheap check on the beginning of the page, must not do any real parsing.
+     *
+     * @param head the first few KB of the page, or the whole page if it is shorter than that.
+     *
+     * @return true if the page look like the layout this strategy can parse.
+     */
+    public boolean matches(String head);
+
+    /**
+     * Parse the whole page, the reader is positioned at the beginning of the page.
+     *
+     * @return list of subject, or null if the page is not in expected format.
+     */
+    public ArrayList<Subject> parse(Reader reader) throws IOException;
+}
@@ -19,9 +19,6 @@ package com.lugia.timetable;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 final class Event implements Parcelable
 {
     private String mName;
@@ -123,6 +120,14 @@ final class Event implements Parcelable
         return mDate % 100;
     }
 
+    /**
+     * @return number of day between 1970-01-01 and the event date.
+     */
+    public int getEpochDay()
+    {
+        return toEpochDay(mDate);
+    }
+
     public int getTimeStart()
     {
         return mTimeStart;
@@ -184,44 +189,54 @@ final class Event implements Parcelable
         this.mTimeEnd   = timeEnd;
     }
 
-    public JSONObject getJSONObject()
+    /**
+     * @param date the date packed in the same format as {@link #getDate()}.
+     *
+     * @return number of day between 1970-01-01 and the date.
+     */
+    public static int toEpochDay(int date)
     {
-        JSONObject json = new JSONObject();
+        return toEpochDay(date / 10000, date / 100 % 100, date % 100);
+    }
 
-        try
-        {
-            json.put(JSON_ID,         mId);
-            json.put(JSON_NAME,       mName);
-            json.put(JSON_VENUE,      mVenue);
-            json.put(JSON_NOTE,       mNote);
-            json.put(JSON_TYPE,       mType);
-            json.put(JSON_DATE,       mDate);
-            json.put(JSON_TIME_START, mTimeStart);
-            json.put(JSON_TIME_END ,  mTimeEnd);
-        }
-        catch (Exception e)
-        {
-            // something went wrong
-            return null;
-        }
+    /**
+     * Number of day between 1970-01-01 and the date, without going through Calendar.
+     *
+     * @param month month of the year, start from 0 same as {@link java.util.Calendar#MONTH}.
+     */
+    public static int toEpochDay(int year, int month, int day)
+    {
+        // count the year from March so the leap day is the last day of a year
+        int m = month + 1;
+        int y = m <= 2 ? year - 1 : year;
+
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
 
-        return json;
+        return era * 146097 + dayOfEra - 719468;
     }
 
-    public static Event restoreFromJSON(JSONObject json) throws JSONException
+    /**
+     * Inverse of {@link #toEpochDay(int, int, int)}.
+     *
+     * @return the date packed in the same format as {@link #getDate()}.
+     */
+    public static int fromEpochDay(int epochDay)
     {
-        long id = json.getLong(JSON_ID);
-        
-        String name  = json.getString(JSON_NAME);
-        String venue = json.getString(JSON_VENUE);
-        String note  = json.getString(JSON_NOTE);
-        
-        int type      = json.getInt(JSON_TYPE);
-        int date      = json.getInt(JSON_DATE);
-        int timeStart = json.getInt(JSON_TIME_START);
-        int timeEnd   = json.getInt(JSON_TIME_END);
-        
-        return new Event(id, name, venue, note, type, date, timeStart, timeEnd);
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 2 : mp - 10;
+        int year = yearOfEra + era * 400 + (month < 2 ? 1 : 0);
+
+        return year * 10000 + month * 100 + day;
     }
 
     // =======================================
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Index of event across all subject, ordered by date and start time.
+ *
+ * Every entry keep a copy of the date and time it was indexed with, so an event changed after indexed can
+ * still be removed. Changed event have to be removed and put again to be placed correctly.
+ */
+final class EventDateIndex
+{
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>()
+    {
+        @Override
+        public int compare(Entry lhs, Entry rhs)
+        {
+            if (lhs.date != rhs.date)
+                return lhs.date < rhs.date ? -1 : 1;
+            
+            if (lhs.time != rhs.time)
+                return lhs.time < rhs.time ? -1 : 1;
+            
+            // event at the same time, keep them in the order they are indexed
+            if (lhs.sequence != rhs.sequence)
+                return lhs.sequence < rhs.sequence ? -1 : 1;
+            
+            return 0;
+        }
+    };
+    
+    private final TreeSet<Entry> mSet = new TreeSet<Entry>(ENTRY_COMPARATOR);
+    private final IdentityHashMap<Event, Entry> mEntries = new IdentityHashMap<Event, Entry>();
+    
+    private long mSequence = 0;
+    
+    public void put(Subject subject, Event event)
+    {
+        if (mEntries.containsKey(event))
+            remove(event);
+        
+        Entry entry = new Entry(subject, event, event.getDate(), event.getTimeStart(), mSequence++);
+        
+        mSet.add(entry);
+        mEntries.put(event, entry);
+    }
+    
+    public void remove(Event event)
+    {
+        Entry entry = mEntries.remove(event);
+        
+        if (entry != null)
+            mSet.remove(entry);
+    }
+    
+    public int size()
+    {
+        return mSet.size();
+    }
+    
+    public void clear()
+    {
+        mSet.clear();
+        mEntries.clear();
+    }
+    
+    public void rebuild(List<Subject> subjects)
+    {
+        clear();
+        
+        for (Subject subject : subjects)
+            for (Event event : subject.getEvents())
+                put(subject, event);
+    }
+    
+    /**
+     * @param fromDate first date, inclusive, packed same as {@link Event#getDate()}.
+     * @param toDate last date, inclusive.
+     *
+     * @return events between the two date, ordered by date and start time.
+     */
+    public ArrayList<Event> eventsBetween(int fromDate, int toDate)
+    {
+        ArrayList<Event> events = new ArrayList<Event>();
+        
+        if (fromDate > toDate)
+            return events;
+        
+        Entry from = new Entry(null, null, fromDate, Integer.MIN_VALUE, Long.MIN_VALUE);
+        Entry to   = new Entry(null, null, toDate, Integer.MAX_VALUE, Long.MAX_VALUE);
+        
+        for (Entry entry : mSet.subSet(from, true, to, true))
+            events.add(entry.event);
+        
+        return events;
+    }
+    
+    /**
+     * @param date the date, packed same as {@link Event#getDate()}.
+     * @param time the time, packed same as {@link Event#getTimeStart()}.
+     * @param count maximum number of event to return.
+     *
+     * @return the first events that start on or after the date and time, ordered by date and start time.
+     */
+    public ArrayList<Event> nextEvents(int date, int time, int count)
+    {
+        ArrayList<Event> events = new ArrayList<Event>();
+        
+        Entry from = new Entry(null, null, date, time, Long.MIN_VALUE);
+        
+        for (Entry entry : mSet.tailSet(from, true))
+        {
+            if (events.size() >= count)
+                break;
+            
+            events.add(entry.event);
+        }
+        
+        return events;
+    }
+    
+    /**
+     * Collect every event that start on or after the date and time, ordered by date and start time.
+     *
+     * @param subjects receive the subject owning the event at the same index of the result.
+     */
+    public ArrayList<Event> eventsFrom(int date, int time, ArrayList<Subject> subjects)
+    {
+        ArrayList<Event> events = new ArrayList<Event>();
+        
+        Entry from = new Entry(null, null, date, time, Long.MIN_VALUE);
+        
+        for (Entry entry : mSet.tailSet(from, true))
+        {
+            events.add(entry.event);
+            subjects.add(entry.subject);
+        }
+        
+        return events;
+    }
+    
+    /**
+     * @return the subject owning the event, or null if the event is not indexed.
+     */
+    public Subject getSubject(Event event)
+    {
+        Entry entry = mEntries.get(event);
+        
+        return entry != null ? entry.subject : null;
+    }
+    
+    private static final class Entry
+    {
+        final Subject subject;
+        final Event event;
+        
+        final int date;
+        final int time;
+        final long sequence;
+        
+        Entry(Subject subject, Event event, int date, int time, long sequence)
+        {
+            this.subject  = subject;
+            this.event    = event;
+            this.date     = date;
+            this.time     = time;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -53,7 +53,13 @@ public class EventDetailDialogFragment extends DialogFragment implements View.On
     {
         AlertDialog.Builder dialog = new AlertDialog.Builder(getActivity());
         
-        dialog.setView(createView());
+        View view = createView();
+        
+        // subject or event removed by a resync before the dialog is shown
+        if (view == null)
+            dialog.setMessage("This event no longer exists.");
+        else
+            dialog.setView(view);
         
         return dialog.create();
     }
@@ -64,8 +70,14 @@ public class EventDetailDialogFragment extends DialogFragment implements View.On
         long eventId = getArguments().getLong(EXTRA_EVENT_ID, 0);
         boolean editable = getArguments().getBoolean(EXTRA_EDITABLE, true);
         
-        Subject subject = SubjectList.getInstance(getActivity()).findSubject(subjectCode);
-        Event event = subject.findEvent(eventId);
+        SubjectList subjectList = SubjectList.getInstance(getActivity());
+        
+        // always look up by code and id, the instances are replaced on every resync
+        Subject subject = subjectList.findSubject(subjectCode);
+        Event event = subjectList.findEvent(eventId);
+        
+        if (subject == null || event == null)
+            return null;
         
         int color = Utils.getForegroundColor(getActivity(), subject.getColor());
         
@@ -147,13 +159,11 @@ public class EventDetailDialogFragment extends DialogFragment implements View.On
                     @Override
                     public void onClick(DialogInterface dialog, int which)
                     {
-                        String subjectCode = getArguments().getString(EXTRA_SUBJECT_CODE);
                         long eventId = getArguments().getLong(EXTRA_EVENT_ID, 0);
                         
                         SubjectList subjectList = SubjectList.getInstance(getActivity());
-                        Subject subject = subjectList.findSubject(subjectCode);
                         
-                        if (subject.deleteEvent(eventId))
+                        if (subjectList.deleteEvent(eventId))
                             Toast.makeText(getActivity(), "Event deleted", Toast.LENGTH_SHORT).show();
                         else
                             Toast.makeText(getActivity(), "Fail to delete event!", Toast.LENGTH_SHORT).show();
@@ -163,8 +173,6 @@ public class EventDetailDialogFragment extends DialogFragment implements View.On
                         // this is use to dismiss the Event Detail Dialog 
                         dismiss();
                         
-                        subjectList.saveToFile(getActivity());
-                        
                         if (mEventUpdateListener != null)
                             mEventUpdateListener.onEventDeleted();
                         
@@ -16,6 +16,7 @@
 
 package com.lugia.timetable;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 
 import android.app.ActionBar;
@@ -52,7 +53,7 @@ public class EventFormActivity extends Activity
     private Button mTimeEndButton;
 
     private SubjectList mSubjectList;
-    private Subject mSubject;
+    private String mSubjectCode;
     
     private Event mEvent;
     
@@ -92,8 +93,8 @@ public class EventFormActivity extends Activity
         
         mSubjectList = SubjectList.getInstance(EventFormActivity.this);
         
-        mSubject = mSubjectList.findSubject(subjectCode);
-        mEvent = mSubject.findEvent(eventId);
+        mSubjectCode = subjectCode;
+        mEvent = mSubjectList.findEvent(eventId);
 
         mNameEditText = (EditText)findViewById(R.id.input_event_name);
         mVenueEditText = (EditText)findViewById(R.id.input_event_venue);
@@ -176,25 +177,41 @@ public class EventFormActivity extends Activity
         int eventTimeStart = (mTime[0] * 100) + mTime[1];
         int eventTimeEnd   = (mTime[2] * 100) + mTime[3];
         
-        if (mEvent != null)
+        // subject list may be replaced by a resync while the form is open, look up the subject and event
+        // again so the change is not written to an instance that is no longer in the list
+        Subject subject = mSubjectList.findSubject(mSubjectCode);
+        
+        if (subject == null)
+        {
+            Toast.makeText(EventFormActivity.this, "Subject no longer exists, event not saved!", Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        
+        Event event = mEvent != null ? subject.findEvent(mEvent.getId()) : null;
+        
+        // the event is saved anyway, just let user know it clash with other event
+        ArrayList<Event> overlapping = mSubjectList.findOverlappingEvents(eventDate, eventTimeStart, eventTimeEnd);
+        
+        overlapping.remove(event);
+        
+        if (event != null)
         {
             // update event
-            mEvent.setName(eventName);
-            mEvent.setVenue(eventVenue);
-            mEvent.setNote(eventNote);
-            mEvent.setType(eventType);
-            mEvent.setDate(eventDate);
-            mEvent.setTime(eventTimeStart, eventTimeEnd);
+            subject.updateEvent(event, eventName, eventVenue, eventNote, eventType, eventDate, eventTimeStart, eventTimeEnd);
         }
         else
         {
-            // New event
-            mSubject.addEvent(eventName, eventVenue, eventNote, eventType, eventDate, eventTimeStart, eventTimeEnd);
+            // New event, or the event being edited is gone with the resync, keep what user entered
+            subject.addEvent(eventName, eventVenue, eventNote, eventType, eventDate, eventTimeStart, eventTimeEnd);
         }
 
-        mSubjectList.saveToFile(EventFormActivity.this);
-
-        Toast.makeText(EventFormActivity.this, "Event Saved", Toast.LENGTH_SHORT).show();
+        // the change is kept in the event journal by the subject list, no need to save everything
+        
+        if (overlapping.isEmpty())
+            Toast.makeText(EventFormActivity.this, "Event Saved", Toast.LENGTH_SHORT).show();
+        else
+            Toast.makeText(EventFormActivity.this, "Event Saved, but it clash with " + overlapping.get(0).getName(), Toast.LENGTH_LONG).show();
         
         setResult(RESULT_OK);
 
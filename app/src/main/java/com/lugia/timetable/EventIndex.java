@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index of event by event id across all subject, every entry also remember the subject owning the event.
+ */
+final class EventIndex
+{
+    private final HashMap<Long, Entry> mMap = new HashMap<Long, Entry>();
+    
+    /**
+     * Add event to the index, the first event added for an event id win, same as {@link Subject#findEvent(long)}.
+     */
+    public void put(Subject subject, Event event)
+    {
+        if (!mMap.containsKey(event.getId()))
+            mMap.put(event.getId(), new Entry(subject, event));
+    }
+    
+    /**
+     * Remove the event from the index, nothing happen if the id is now used by another event.
+     */
+    public void remove(Event event)
+    {
+        Entry entry = mMap.get(event.getId());
+        
+        if (entry != null && entry.event == event)
+            mMap.remove(event.getId());
+    }
+    
+    public Event getEvent(long eventId)
+    {
+        Entry entry = mMap.get(eventId);
+        
+        return entry != null ? entry.event : null;
+    }
+    
+    public Subject getSubject(long eventId)
+    {
+        Entry entry = mMap.get(eventId);
+        
+        return entry != null ? entry.subject : null;
+    }
+    
+    public void clear()
+    {
+        mMap.clear();
+    }
+    
+    public void rebuild(List<Subject> subjects)
+    {
+        mMap.clear();
+        
+        for (Subject subject : subjects)
+            for (Event event : subject.getEvents())
+                put(subject, event);
+    }
+    
+    private static final class Entry
+    {
+        final Subject subject;
+        final Event event;
+        
+        Entry(Subject subject, Event event)
+        {
+            this.subject = subject;
+            this.event   = event;
+        }
+    }
+}
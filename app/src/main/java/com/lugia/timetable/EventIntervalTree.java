@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Interval tree of event across all subject, answer which event overlap a period of time.
+ *
+ * The tree is a treap ordered by the start of event, every node also remember the latest end in its
+ * subtree so the subtree that end before the period can be skipped. Start and end of event are counted
+ * as minute since epoch, see {@link Semester#toEpochMinute(int, int)}, the end is exclusive.
+ */
+final class EventIntervalTree
+{
+    private final IdentityHashMap<Event, Node> mNodes = new IdentityHashMap<Event, Node>();
+    private final Random mRandom = new Random();
+    
+    private Node mRoot = null;
+    
+    private long mSequence = 0;
+    
+    public void put(Event event)
+    {
+        if (mNodes.containsKey(event))
+            remove(event);
+        
+        long start = getStart(event);
+        long end   = Math.max(getEnd(event), start + 1);
+        
+        Node node = new Node(event, start, end, mSequence++, mRandom.nextInt());
+        
+        mRoot = insert(mRoot, node);
+        mNodes.put(event, node);
+    }
+    
+    public void remove(Event event)
+    {
+        Node node = mNodes.remove(event);
+        
+        if (node != null)
+            mRoot = delete(mRoot, node);
+    }
+    
+    public int size()
+    {
+        return mNodes.size();
+    }
+    
+    public void clear()
+    {
+        mRoot = null;
+        mNodes.clear();
+    }
+    
+    public void rebuild(List<Subject> subjects)
+    {
+        clear();
+        
+        for (Subject subject : subjects)
+            for (Event event : subject.getEvents())
+                put(event);
+    }
+    
+    /**
+     * @param date the date, packed same as {@link Event#getDate()}.
+     * @param timeStart start of the period, packed same as {@link Event#getTimeStart()}.
+     * @param timeEnd end of the period, exclusive.
+     *
+     * @return events overlapping the period, ordered by start time.
+     */
+    public ArrayList<Event> findOverlapping(int date, int timeStart, int timeEnd)
+    {
+        int day = Event.toEpochDay(date);
+        
+        long start = Semester.toEpochMinute(day, timeStart);
+        long end   = Math.max(Semester.toEpochMinute(day, timeEnd), start + 1);
+        
+        ArrayList<Event> events = new ArrayList<Event>();
+        
+        collect(mRoot, start, end, events);
+        
+        return events;
+    }
+    
+    private static void collect(Node node, long start, long end, ArrayList<Event> events)
+    {
+        // nothing in this subtree end after the period start
+        if (node == null || node.maxEnd <= start)
+            return;
+        
+        collect(node.left, start, end, events);
+        
+        // node on the right start even later
+        if (node.start >= end)
+            return;
+        
+        if (node.end > start)
+            events.add(node.event);
+        
+        collect(node.right, start, end, events);
+    }
+    
+    // ======================================================
+    // Treap
+    // ======================================================
+    
+    private static Node insert(Node root, Node node)
+    {
+        if (root == null)
+            return node;
+        
+        if (compare(node, root) < 0)
+        {
+            root.left = insert(root.left, node);
+            
+            if (root.left.priority > root.priority)
+                root = rotateRight(root);
+        }
+        else
+        {
+            root.right = insert(root.right, node);
+            
+            if (root.right.priority > root.priority)
+                root = rotateLeft(root);
+        }
+        
+        update(root);
+        
+        return root;
+    }
+    
+    private static Node delete(Node root, Node node)
+    {
+        if (root == null)
+            return null;
+        
+        if (root == node)
+            return merge(root.left, root.right);
+        
+        if (compare(node, root) < 0)
+            root.left = delete(root.left, node);
+        else
+            root.right = delete(root.right, node);
+        
+        update(root);
+        
+        return root;
+    }
+    
+    private static Node merge(Node left, Node right)
+    {
+        if (left == null)
+            return right;
+        
+        if (right == null)
+            return left;
+        
+        if (left.priority > right.priority)
+        {
+            left.right = merge(left.right, right);
+            update(left);
+            
+            return left;
+        }
+        else
+        {
+            right.left = merge(left, right.left);
+            update(right);
+            
+            return right;
+        }
+    }
+    
+    private static Node rotateRight(Node node)
+    {
+        Node left = node.left;
+        
+        node.left = left.right;
+        left.right = node;
+        
+        update(node);
+        update(left);
+        
+        return left;
+    }
+    
+    private static Node rotateLeft(Node node)
+    {
+        Node right = node.right;
+        
+        node.right = right.left;
+        right.left = node;
+        
+        update(node);
+        update(right);
+        
+        return right;
+    }
+    
+    private static void update(Node node)
+    {
+        long maxEnd = node.end;
+        
+        if (node.left != null && node.left.maxEnd > maxEnd)
+            maxEnd = node.left.maxEnd;
+        
+        if (node.right != null && node.right.maxEnd > maxEnd)
+            maxEnd = node.right.maxEnd;
+        
+        node.maxEnd = maxEnd;
+    }
+    
+    private static int compare(Node lhs, Node rhs)
+    {
+        if (lhs.start != rhs.start)
+            return lhs.start < rhs.start ? -1 : 1;
+        
+        if (lhs.sequence != rhs.sequence)
+            return lhs.sequence < rhs.sequence ? -1 : 1;
+        
+        return 0;
+    }
+    
+    // ======================================================
+    // Time
+    // ======================================================
+    
+    private static long getStart(Event event)
+    {
+        return Semester.toEpochMinute(event.getEpochDay(), event.getTimeStart());
+    }
+    
+    private static long getEnd(Event event)
+    {
+        return Semester.toEpochMinute(event.getEpochDay(), event.getTimeEnd());
+    }
+    
+    private static final class Node
+    {
+        final Event event;
+        
+        final long start;
+        final long end;
+        final long sequence;
+        final int priority;
+        
+        long maxEnd;
+        
+        Node left  = null;
+        Node right = null;
+        
+        Node(Event event, long start, long end, long sequence, int priority)
+        {
+            this.event    = event;
+            this.start    = start;
+            this.end      = end;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.maxEnd   = end;
+        }
+    }
+}
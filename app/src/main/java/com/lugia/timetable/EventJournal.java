@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of event added, updated and deleted since the last save file.
+ *
+ * Editing an event append a small record instead of rewriting the whole save file, the records are
+ * replayed on top of the save file when loading. Once the save file is written again the journal is
+ * no longer needed and is removed.
+ *
+ * Layout, all number in big endian:
+ * <pre>
+ * int     magic "TTGJ"
+ * short   version
+ * records, each as int body length, body, int CRC32 of body
+ * body:   byte operation, string subject code, long event id
+ *         followed by string name, string venue, string note, int type, int date, int time start,
+ *         int time end for add and update
+ * </pre>
+ * Replaying a record twice has no further effect, so a journal left behind by an interrupted save is
+ * harmless. A torn record at the end, from a crash during append, is cut off on replay.
+ */
+final class EventJournal
+{
+    public static final int MAGIC = 0x5454474a; // "TTGJ"
+
+    public static final int VERSION = 1;
+
+    public static final byte OPERATION_ADD    = 1;
+    public static final byte OPERATION_UPDATE = 2;
+    public static final byte OPERATION_DELETE = 3;
+
+    private static final int HEADER_SIZE = 6;
+
+    // record larger than this must be garbage
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private static final String TAG = "EventJournal";
+
+    private final File mFile;
+
+    public EventJournal(File file)
+    {
+        mFile = file;
+    }
+
+    public File getFile()
+    {
+        return mFile;
+    }
+
+    /**
+     * @return size of the journal in bytes.
+     */
+    public long length()
+    {
+        return mFile.length();
+    }
+
+    // ======================================================
+    // Record
+    // ======================================================
+
+    public static byte[] encodeAdd(Subject subject, Event event)
+    {
+        return encode(OPERATION_ADD, subject, event.getId(), event);
+    }
+
+    public static byte[] encodeUpdate(Subject subject, Event event)
+    {
+        return encode(OPERATION_UPDATE, subject, event.getId(), event);
+    }
+
+    public static byte[] encodeDelete(Subject subject, long eventId)
+    {
+        return encode(OPERATION_DELETE, subject, eventId, null);
+    }
+
+    private static byte[] encode(byte operation, Subject subject, long eventId, Event event)
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(body);
+
+        try
+        {
+            out.writeByte(operation);
+            writeString(out, subject.getSubjectCode());
+            out.writeLong(eventId);
+
+            if (event != null)
+            {
+                writeString(out, event.getName());
+                writeString(out, event.getVenue());
+                writeString(out, event.getNote());
+
+                out.writeInt(event.getType());
+                out.writeInt(event.getDate());
+                out.writeInt(event.getTimeStart());
+                out.writeInt(event.getTimeEnd());
+            }
+
+            byte[] data = body.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 8);
+            DataOutputStream recordOut = new DataOutputStream(record);
+
+            recordOut.writeInt(data.length);
+            recordOut.write(data);
+            recordOut.writeInt((int)crc.getValue());
+
+            return record.toByteArray();
+        }
+        catch (IOException e)
+        {
+            // writing to memory never fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        out.writeBoolean(string != null);
+
+        if (string != null)
+            out.writeUTF(string);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // ======================================================
+    // File
+    // ======================================================
+
+    /**
+     * Append the record and sync it to disk.
+     */
+    public boolean append(byte[] record)
+    {
+        try
+        {
+            boolean newFile = mFile.length() < HEADER_SIZE;
+
+            FileOutputStream out = new FileOutputStream(mFile, !newFile);
+
+            try
+            {
+                if (newFile)
+                {
+                    DataOutputStream header = new DataOutputStream(out);
+
+                    header.writeInt(MAGIC);
+                    header.writeShort(VERSION);
+                }
+
+                out.write(record);
+                out.flush();
+                out.getFD().sync();
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Error on append!", e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the journal, call it after the save file include every change in it.
+     */
+    public void reset()
+    {
+        if (mFile.exists() && !mFile.delete())
+            Log.w(TAG, "Fail to remove journal.");
+    }
+
+    /**
+     * Apply the records to the subjects, subject is looked up by subject code.
+     *
+     * @return number of record applied.
+     */
+    public int replay(List<Subject> subjects)
+    {
+        if (!mFile.exists())
+            return 0;
+
+        SubjectIndex index = new SubjectIndex();
+        index.rebuild(subjects);
+
+        int count = 0;
+
+        // length of the journal up to the last intact record
+        long validLength = HEADER_SIZE;
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+
+            try
+            {
+                if (mFile.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readUnsignedShort() > VERSION)
+                {
+                    Log.w(TAG, "Unknown journal, discarded.");
+
+                    validLength = 0;
+                }
+                else
+                {
+                    byte[] body;
+
+                    while ((body = readRecord(in)) != null)
+                    {
+                        if (apply(index, body))
+                            count++;
+
+                        validLength += body.length + 8;
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Error on replay!", e);
+        }
+
+        // cut off the torn record, otherwise records appended later will never be reached
+        if (validLength < mFile.length())
+            truncate(validLength);
+
+        return count;
+    }
+
+    private void truncate(long length)
+    {
+        if (length == 0)
+        {
+            reset();
+            return;
+        }
+
+        try
+        {
+            RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+
+            try
+            {
+                file.setLength(length);
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Error on truncate!", e);
+        }
+    }
+
+    /**
+     * @return body of the next record, or null at the end of journal or a torn record.
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException
+    {
+        try
+        {
+            int length = in.readInt();
+
+            if (length <= 0 || length > MAX_RECORD_SIZE)
+                return null;
+
+            byte[] body = new byte[length];
+
+            in.readFully(body);
+
+            int checksum = in.readInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+
+            return (int)crc.getValue() == checksum ? body : null;
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean apply(SubjectIndex index, byte[] body) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+
+        byte operation = in.readByte();
+        Subject subject = index.get(readString(in));
+        long eventId = in.readLong();
+
+        // subject removed after the record
+        if (subject == null)
+            return false;
+
+        if (operation == OPERATION_DELETE)
+            return subject.deleteEvent(eventId);
+
+        String name  = readString(in);
+        String venue = readString(in);
+        String note  = readString(in);
+
+        int type      = in.readInt();
+        int date      = in.readInt();
+        int timeStart = in.readInt();
+        int timeEnd   = in.readInt();
+
+        Event event = subject.findEvent(eventId);
+
+        switch (operation)
+        {
+            case OPERATION_ADD:
+                // already in the save file
+                if (event != null)
+                    return false;
+
+                subject.addEvent(new Event(eventId, name, venue, note, type, date, timeStart, timeEnd));
+                return true;
+
+            case OPERATION_UPDATE:
+                if (event == null)
+                    return false;
+
+                subject.updateEvent(event, name, venue, note, type, date, timeStart, timeEnd);
+                return true;
+
+            default:
+                Log.w(TAG, "Unknown operation: " + operation);
+                return false;
+        }
+    }
+}
@@ -16,8 +16,10 @@
     
     package com.lugia.timetable;
     
+    import java.security.DigestInputStream;
     import java.util.ArrayList;
     import java.util.List;
+    import java.util.concurrent.TimeUnit;
     
     import org.apache.http.HttpEntity;
     import org.apache.http.HttpResponse;
@@ -62,6 +64,9 @@ public class LoginActivity extends Activity implements OnClickListener, TextWatc
     public static final String LOGIN_ID_NAME       = "id";
     public static final String LOGIN_PASSWORD_NAME = "pwd";
     
+    // seconds to wait for the downloaded subject list to be saved
+    private static final long SAVE_TIMEOUT = 10;
+    
     private static final String TAG = "LoginActivity";
     
     @Override
@@ -216,9 +221,19 @@ public class LoginActivity extends Activity implements OnClickListener, TextWatc
                 
                 setProgressMessage("Reading course detail...");
                 
-                String content = EntityUtils.toString(entity);
+                ArrayList<Subject> temp;
+                
+                // parse while downloading, the page is never hold as a whole
+                DigestInputStream content = new DigestInputStream(entity.getContent(), PageFingerprintCache.createDigest());
                 
-                ArrayList<Subject> temp = CourseParser.tryParse(content);
+                try
+                {
+                    temp = CourseParser.tryParse(content, EntityUtils.getContentCharSet(entity));
+                }
+                finally
+                {
+                    content.close();
+                }
                 
                 dismissProgressDialog();
                 
@@ -230,12 +245,28 @@ public class LoginActivity extends Activity implements OnClickListener, TextWatc
                 }
                 
                 SubjectList subjectList = SubjectList.getInstance(LoginActivity.this);
-                subjectList.replace(temp);
                 
-                // for debug purpose
-                subjectList.displaySubjectListContent();
+                String fingerprint = PageFingerprintCache.toHex(content.getMessageDigest().digest());
                 
-                subjectList.saveToFile(LoginActivity.this);
+                // same page as the subject list on device come from, current data is already up to date,
+                // the page is parsed while downloading anyway so only replacing and saving is skipped
+                if (subjectList.size() > 0 && fingerprint.equals(subjectList.getCoursePageFingerprint(mMmuId)))
+                {
+                    Log.i(TAG, "Course detail unchanged, skip update.");
+                }
+                else
+                {
+                    subjectList.replace(temp);
+                    
+                    // for debug purpose
+                    subjectList.displaySubjectListContent();
+                    
+                    subjectList.requestSave();
+                    
+                    // only remember the page once it is on disk, this is not the main thread so just wait for it
+                    if (subjectList.awaitSaved(SAVE_TIMEOUT, TimeUnit.SECONDS))
+                        PageFingerprintCache.storeFingerprint(LoginActivity.this, mMmuId, fingerprint);
+                }
                 
                 showSuccessToast();
                 
@@ -105,6 +105,15 @@ public class MasterActivity extends FragmentActivity implements ActionBar.OnNavi
         outState.putInt(STATE_SELECTED_NAVIGATION_ITEM, getActionBar().getSelectedNavigationIndex());
     }
     
+    @Override
+    protected void onStop()
+    {
+        super.onStop();
+        
+        // dont leave pending change in memory when the app go to background
+        SubjectList.getInstance(MasterActivity.this).flush();
+    }
+    
     @Override
     public boolean onCreateOptionsMenu(Menu menu)
     {
@@ -143,9 +152,7 @@ public class MasterActivity extends FragmentActivity implements ActionBar.OnNavi
             
             case REQUEST_CODE_DOWNLOAD_DATA:
             {
-                // recreate the entire activity
-                recreate();
-                
+                // fragments are listening to the subject list, only the changed subject is updated
                 break;
             }
         }
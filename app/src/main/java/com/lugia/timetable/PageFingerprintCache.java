@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.content.Context;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Cache of the last parsed course detail page of every account, keyed by the content hash of the page.
+ *
+ * ICEMS return a byte identical page on most resync, when the fingerprint match the previous one the
+ * parse result can be reused as is.
+ *
+ * The fingerprint of the page that the subject list on device come from is stored in preferences along
+ * with its account, so a resync of an unchanged page can skip replacing and saving the list.
+ */
+public class PageFingerprintCache
+{
+    public static final String DIGEST_ALGORITHM = "SHA-1";
+
+    // fingerprint of the page that current subject list come from, and the account of the page,
+    // there is only one subject list on device so only one fingerprint is kept
+    private static final String KEY_FINGERPRINT = "course_page_fingerprint";
+    private static final String KEY_ACCOUNT     = "course_page_account";
+
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    /**
+     * @return copy of the subject list parsed from the page with same fingerprint, or null if the page changed.
+     */
+    public synchronized ArrayList<Subject> get(String account, String fingerprint)
+    {
+        Entry entry = mEntries.get(account);
+
+        if (entry == null || !entry.fingerprint.equals(fingerprint))
+            return null;
+
+        // caller is free to modify the result, dont let it reach the cached subjects
+        return copyOf(entry.subjects);
+    }
+
+    public synchronized void put(String account, String fingerprint, List<Subject> subjects)
+    {
+        mEntries.put(account, new Entry(fingerprint, copyOf(subjects)));
+    }
+
+    public synchronized void remove(String account)
+    {
+        mEntries.remove(account);
+    }
+
+    public synchronized void clear()
+    {
+        mEntries.clear();
+    }
+
+    private static ArrayList<Subject> copyOf(List<Subject> subjects)
+    {
+        ArrayList<Subject> copy = new ArrayList<Subject>(subjects.size());
+
+        for (Subject subject : subjects)
+            copy.add(subject.copy());
+
+        return copy;
+    }
+
+    public static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // SHA-1 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String fingerprint(byte[] data, int offset, int length)
+    {
+        MessageDigest digest = createDigest();
+
+        digest.update(data, offset, length);
+
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] hash)
+    {
+        char[] hex = new char[hash.length * 2];
+
+        for (int i = 0; i < hash.length; i++)
+        {
+            hex[i * 2]     = Character.forDigit((hash[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xf, 16);
+        }
+
+        return new String(hex);
+    }
+
+    // ======================================================
+    // Fingerprint of the data on device
+    // ======================================================
+
+    /**
+     * @return fingerprint of the page that the subject list on device come from, or null if the subject
+     *         list come from other account or has been replaced since.
+     */
+    public static String getStoredFingerprint(Context context, String account)
+    {
+        if (!account.equals(SettingActivity.getString(context, KEY_ACCOUNT, null)))
+            return null;
+
+        return SettingActivity.getString(context, KEY_FINGERPRINT, null);
+    }
+
+    /**
+     * Remember the page that the subject list on device come from, call it only after the list is saved.
+     */
+    public static void storeFingerprint(Context context, String account, String fingerprint)
+    {
+        SettingActivity.getSharedPreferences(context)
+                       .edit()
+                       .putString(KEY_ACCOUNT,     account)
+                       .putString(KEY_FINGERPRINT, fingerprint)
+                       .commit();
+    }
+
+    /**
+     * Forget the stored fingerprint, call it before the save file is replaced by a different subject list.
+     */
+    public static void clearStoredFingerprint(Context context)
+    {
+        SettingActivity.getSharedPreferences(context)
+                       .edit()
+                       .remove(KEY_ACCOUNT)
+                       .remove(KEY_FINGERPRINT)
+                       .commit();
+    }
+
+    private static final class Entry
+    {
+        final String fingerprint;
+        final ArrayList<Subject> subjects;
+
+        Entry(String fingerprint, ArrayList<Subject> subjects)
+        {
+            this.fingerprint = fingerprint;
+            this.subjects    = subjects;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.lugia.timetable;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 
 import android.app.AlarmManager;
@@ -87,39 +88,47 @@ public class ReminderReceiver extends BroadcastReceiver
         String subjectCode = "";
         String header = "";
         String content = "";
+        
+        // the class have to start after this moment to be notified in advance, round it up to the next minute
+        Calendar fromCalendar = Calendar.getInstance();
+        
+        fromCalendar.setTimeInMillis(currentTimeMillies);
+        fromCalendar.add(Calendar.MINUTE, notifyBefore);
+        
+        if (fromCalendar.get(Calendar.SECOND) != 0 || fromCalendar.get(Calendar.MILLISECOND) != 0)
+            fromCalendar.add(Calendar.MINUTE, 1);
+        
+        long fromMinute = Semester.toEpochMinute(fromCalendar);
+        long targetMinute = Long.MAX_VALUE;
+        
+        // no class outside of the semester and during the break
+        Semester semester = Semester.load(context);
 
-        // try to find the next nearest schedule
+        // try to find the next nearest schedule, only the first occurrence of every subject is needed
         for (Subject subject : subjectList)
         {
-            for (Schedule schedule : subject.getSchedules())
+            Semester.OccurrenceIterator iterator = semester.occurrences(subject, fromMinute);
+            
+            if (!iterator.hasNext())
+                continue;
+            
+            long minute = iterator.next();
+            
+            if (minute < targetMinute)
             {
-                Calendar scheduleCalendar = Calendar.getInstance();
-
-                scheduleCalendar.set(Calendar.DAY_OF_WEEK, schedule.getDay() + 1);
-                scheduleCalendar.set(Calendar.HOUR_OF_DAY, schedule.getTime());
-                scheduleCalendar.set(Calendar.MINUTE,      0);
-                scheduleCalendar.set(Calendar.SECOND,      0);
-                scheduleCalendar.set(Calendar.MILLISECOND, 0);
-
-                // notify in advance according to user setting
-                scheduleCalendar.add(Calendar.MINUTE, -notifyBefore);
-
-                // increase the week by 1 if the time is happen in past, this will wrap the time to next week
-                if (scheduleCalendar.getTimeInMillis() < currentTimeMillies)
-                    scheduleCalendar.add(Calendar.WEEK_OF_YEAR, 1);
-
-                Log.i(TAG, "DIFF -> " + currentTimeMillies + ", " + scheduleCalendar.getTimeInMillis());
-
-                if (scheduleCalendar.getTimeInMillis() < targetTimeMillies)
-                {
-                    targetTimeMillies = scheduleCalendar.getTimeInMillis();
+                long slot = iterator.getScheduleSlot();
+                
+                targetMinute = minute;
 
-                    subjectCode = subject.getSubjectCode();
-                    header = subject.getSubjectCode() + " - " + subject.getSubjectDescription();
-                    content = mDayStrings[schedule.getDay()] + ", " + mTimeStrings[schedule.getTime()] + " - " + schedule.getRoom();
-                }
+                subjectCode = subject.getSubjectCode();
+                header = subject.getSubjectCode() + " - " + subject.getSubjectDescription();
+                content = mDayStrings[Schedule.getDay(slot)] + ", " + mTimeStrings[Schedule.getTime(slot)] + " - " + subject.getScheduleRoom(iterator.getScheduleIndex());
             }
         }
+        
+        // notify in advance according to user setting
+        if (targetMinute != Long.MAX_VALUE)
+            targetTimeMillies = Semester.toMillis(targetMinute - notifyBefore);
 
         // this is unlikely to be happen
         if (targetTimeMillies == Long.MAX_VALUE)
@@ -182,45 +191,50 @@ public class ReminderReceiver extends BroadcastReceiver
         
         long eventId = -1;
         
-        // try to find the next nearest event
-        for (Subject subject : subjectList)
+        // the event have to start after this moment to be notified in advance, round it up to the next minute
+        Calendar fromCalendar = Calendar.getInstance();
+        
+        fromCalendar.setTimeInMillis(currentTimeMillies);
+        fromCalendar.add(Calendar.MINUTE, notifyBefore);
+        
+        if (fromCalendar.get(Calendar.SECOND) != 0 || fromCalendar.get(Calendar.MILLISECOND) != 0)
+            fromCalendar.add(Calendar.MINUTE, 1);
+        
+        int fromDate = fromCalendar.get(Calendar.YEAR) * 10000 + fromCalendar.get(Calendar.MONTH) * 100 + fromCalendar.get(Calendar.DAY_OF_MONTH);
+        int fromTime = fromCalendar.get(Calendar.HOUR_OF_DAY) * 100 + fromCalendar.get(Calendar.MINUTE);
+        
+        // the date index is ordered by start time, the first one is the next nearest event
+        ArrayList<Event> events = subjectList.nextEvents(fromDate, fromTime, 1);
+        
+        if (!events.isEmpty())
         {
-            for (Event event : subject.getEvents())
-            {
-                Calendar eventCalendar = Calendar.getInstance();
-                
-                eventCalendar.set(Calendar.YEAR,         event.getYear());
-                eventCalendar.set(Calendar.MONTH,        event.getMonth());
-                eventCalendar.set(Calendar.DAY_OF_MONTH, event.getDay());
-                eventCalendar.set(Calendar.HOUR_OF_DAY,  event.getStartHour());
-                eventCalendar.set(Calendar.MINUTE,       event.getStartMinute());
-                eventCalendar.set(Calendar.SECOND,       0);
-                eventCalendar.set(Calendar.MILLISECOND,  0);
-
-                // notify in advance according to user setting
-                eventCalendar.add(Calendar.MINUTE, -notifyBefore);
-
-                Log.i(TAG, "DIFF -> " + currentTimeMillies + ", " + eventCalendar.getTimeInMillis());
-                
-                // skip event happened in the past
-                if (eventCalendar.getTimeInMillis() < currentTimeMillies)
-                    continue;
-                
-                if (eventCalendar.getTimeInMillis() < targetTimeMillies)
-                {
-                    targetTimeMillies = eventCalendar.getTimeInMillis();
-
-                    String date  = Utils.getDateString("EE, MMM dd", event.getYear(), event.getMonth(), event.getDay());
-                    String start = Utils.getTimeString("h:mm aa", event.getStartHour(), event.getStartMinute());
-                    String end   = Utils.getTimeString("h:mm aa", event.getEndHour(), event.getEndMinute());
-                    
-                    eventId = event.getId();
-                    
-                    subjectCode = subject.getSubjectCode();
-                    header = event.getName() + "(" + subject.getSubjectCode() + ")";
-                    content = date + ", " + start + " - " + end + " at " + event.getVenue();
-                }
-            }
+            Event event = events.get(0);
+            Subject subject = subjectList.findEventSubject(event.getId());
+            
+            Calendar eventCalendar = Calendar.getInstance();
+            
+            eventCalendar.set(Calendar.YEAR,         event.getYear());
+            eventCalendar.set(Calendar.MONTH,        event.getMonth());
+            eventCalendar.set(Calendar.DAY_OF_MONTH, event.getDay());
+            eventCalendar.set(Calendar.HOUR_OF_DAY,  event.getStartHour());
+            eventCalendar.set(Calendar.MINUTE,       event.getStartMinute());
+            eventCalendar.set(Calendar.SECOND,       0);
+            eventCalendar.set(Calendar.MILLISECOND,  0);
+            
+            // notify in advance according to user setting
+            eventCalendar.add(Calendar.MINUTE, -notifyBefore);
+            
+            targetTimeMillies = eventCalendar.getTimeInMillis();
+            
+            String date  = Utils.getDateString("EE, MMM dd", event.getYear(), event.getMonth(), event.getDay());
+            String start = Utils.getTimeString("h:mm aa", event.getStartHour(), event.getStartMinute());
+            String end   = Utils.getTimeString("h:mm aa", event.getEndHour(), event.getEndMinute());
+            
+            eventId = event.getId();
+            
+            subjectCode = subject.getSubjectCode();
+            header = event.getName() + "(" + subject.getSubjectCode() + ")";
+            content = date + ", " + start + " - " + end + " at " + event.getVenue();
         }
 
         // we didnt find any future event
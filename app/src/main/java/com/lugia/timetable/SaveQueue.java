@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write behind queue of the save file.
+ *
+ * Save requests made within the coalescing window are combined into a single write. When the window
+ * end the subject list is serialized on the main thread, where the subjects are modified, and the
+ * resulting bytes are written to disk on a background thread. Waiting from other thread post the
+ * flush to main thread as well.
+ *
+ * When the subject list cannot be serialized or written, the requests are kept and the save is tried
+ * again later, with a longer delay after every failure in a row.
+ */
+final class SaveQueue
+{
+    // requests made within this period after the first one are combined
+    public static final long COALESCE_WINDOW = 250;
+
+    // delay before trying a failed save again, doubled on every failure in a row
+    public static final long RETRY_DELAY     = 1000;
+    public static final long MAX_RETRY_DELAY = 60 * 1000;
+
+    private static final String TAG = "SaveQueue";
+
+    private final Writer mWriter;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, TAG);
+
+            // pending write should not keep the process alive, flush before going away instead
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    });
+
+    private final Runnable mFlushRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    // guarded by this
+    private boolean mPending = false;
+    private int mRequestCount = 0;
+    private long mRetryDelay = RETRY_DELAY;
+    private Future<Boolean> mLastWrite = null;
+
+    public SaveQueue(Writer writer)
+    {
+        mWriter = writer;
+    }
+
+    /**
+     * Ask for a save, it happen after the coalescing window.
+     */
+    public synchronized void request()
+    {
+        mRequestCount++;
+
+        if (mPending)
+            return;
+
+        mPending = true;
+
+        mHandler.postDelayed(mFlushRunnable, COALESCE_WINDOW);
+    }
+
+    /**
+     * Start the pending save right away without waiting for the window to end, it does not wait for the write.
+     * Must be called on main thread, as the subject list is serialized on the calling thread.
+     */
+    public void flush()
+    {
+        flushPending();
+    }
+
+    /**
+     * @return false if the subject list cannot be serialized, true otherwise.
+     */
+    private boolean flushPending()
+    {
+        final byte[] data;
+        final int requestCount;
+
+        synchronized (this)
+        {
+            if (!mPending)
+                return true;
+
+            mPending = false;
+            mHandler.removeCallbacks(mFlushRunnable);
+
+            requestCount = mRequestCount;
+            mRequestCount = 0;
+
+            data = mWriter.serialize();
+
+            if (data == null)
+            {
+                retry(requestCount);
+
+                return false;
+            }
+
+            mLastWrite = mExecutor.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call()
+                {
+                    long start = System.nanoTime();
+
+                    if (!mWriter.write(data))
+                    {
+                        retry(requestCount);
+
+                        return false;
+                    }
+
+                    Log.d(TAG, String.format("Wrote %d bytes for %d request in %.1f ms", data.length, requestCount,
+                                             (System.nanoTime() - start) / 1e6));
+
+                    synchronized (SaveQueue.this)
+                    {
+                        mRetryDelay = RETRY_DELAY;
+                    }
+
+                    return true;
+                }
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Put back the requests of a failed save, and try it again after the retry delay.
+     */
+    private synchronized void retry(int requestCount)
+    {
+        Log.e(TAG, String.format("Save failed, %d request will be tried again in %d ms", requestCount, mRetryDelay));
+
+        mRequestCount += requestCount;
+
+        // a newer request is already waiting, it write everything anyway
+        if (!mPending)
+        {
+            mPending = true;
+
+            mHandler.postDelayed(mFlushRunnable, mRetryDelay);
+        }
+
+        mRetryDelay = Math.min(mRetryDelay * 2, MAX_RETRY_DELAY);
+    }
+
+    /**
+     * Append a small record of change in background, in the same order as the saves.
+     */
+    public synchronized void append(final byte[] record)
+    {
+        mLastWrite = mExecutor.submit(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return mWriter.append(record);
+            }
+        });
+    }
+
+    /**
+     * Flush the pending save and wait until everything requested so far is written, can be called on any thread.
+     *
+     * @return true if the last write succeeded, false on failure or timeout.
+     */
+    public boolean await(long timeout, TimeUnit unit)
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        Future<Boolean> write;
+
+        try
+        {
+            if (Looper.myLooper() == Looper.getMainLooper())
+            {
+                if (!flushPending())
+                    return false;
+            }
+            else
+            {
+                // serialize on main thread where the subjects are modified, never on the calling thread
+                final CountDownLatch flushed = new CountDownLatch(1);
+                final boolean[] serialized = new boolean[1];
+
+                mHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            serialized[0] = flushPending();
+                        }
+                        finally
+                        {
+                            flushed.countDown();
+                        }
+                    }
+                });
+
+                if (!flushed.await(timeout, unit))
+                {
+                    Log.e(TAG, "Timeout on waiting main thread to flush!");
+
+                    return false;
+                }
+
+                if (!serialized[0])
+                    return false;
+            }
+
+            synchronized (this)
+            {
+                write = mLastWrite;
+            }
+
+            // nothing was ever written
+            if (write == null)
+                return true;
+
+            return write.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            Log.e(TAG, "Error on save!", e);
+        }
+        catch (TimeoutException e)
+        {
+            Log.e(TAG, "Timeout on waiting save!", e);
+        }
+
+        return false;
+    }
+
+    interface Writer
+    {
+        /**
+         * Serialize the current content, called with the queue locked.
+         *
+         * @return the data to be written, or null on error, the save is tried again later.
+         */
+        public byte[] serialize();
+
+        /**
+         * Write the data to disk, called on the background thread.
+         *
+         * @return false on error, the save is tried again later.
+         */
+        public boolean write(byte[] data);
+
+        /**
+         * Append the record to disk, called on the background thread.
+         */
+        public boolean append(byte[] record);
+    }
+}
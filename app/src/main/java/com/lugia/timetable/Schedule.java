@@ -19,17 +19,14 @@ package com.lugia.timetable;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+/**
+ * A schedule of subject, it is an immutable view of a packed schedule slot, see {@link #pack(int, int, int, int)}.
+ */
 final class Schedule implements Parcelable
 {
-    private int mSection;
-    private int mDay;
-    private int mTime;
-    private int mLength;
+    private final long mSlot;
     
-    private String mRoom;
+    private final String mRoom;
     
     public static final int SUNDAY    = 0;
     public static final int MONDAY    = 1;
@@ -48,9 +45,33 @@ final class Schedule implements Parcelable
     public static final String JSON_SECTION = "section";
     public static final String JSON_ROOM    = "room";
     
+    // slot layout, from the highest bits: day, time, length, section
+    private static final int DAY_SHIFT     = 24;
+    private static final int TIME_SHIFT    = 16;
+    private static final int LENGTH_SHIFT  = 8;
+    private static final int SECTION_SHIFT = 0;
+    
+    private static final long FIELD_MASK = 0xff;
+    
     private static final String TAG = "Schedule";
     
     public Schedule(int section, int day, int time, int length, String room)
+    {
+        this.mSlot = pack(section, day, time, length);
+        this.mRoom = room;
+    }
+    
+    Schedule(long slot, String room)
+    {
+        this.mSlot = slot;
+        this.mRoom = room;
+    }
+    
+    /**
+     * Pack the schedule into a single primitive, ordering of the packed value is same as ordering by day
+     * and then time.
+     */
+    public static long pack(int section, int day, int time, int length)
     {
         if (section != LECTURE_SECTION && section != TUTORIAL_SECTION)
             throw new IllegalArgumentException("Invalid section value, should be either lecture or tutorial section");
@@ -61,108 +82,82 @@ final class Schedule implements Parcelable
         if (time < 0 || time > 23)
             throw new IllegalArgumentException("Invalid time value, should between 0 to 23.");
         
-        if (length < 1)
+        if (length < 1 || length > FIELD_MASK)
             throw new IllegalArgumentException("Invalid length value, should larger than or equal to 1.");
         
-        this.mDay     = day;
-        this.mTime    = time;
-        this.mLength  = length;
-        this.mSection = section;
-        this.mRoom    = room;
+        return ((long)day << DAY_SHIFT) | ((long)time << TIME_SHIFT) | ((long)length << LENGTH_SHIFT) | ((long)section << SECTION_SHIFT);
     }
     
-    public int getDay()
+    public static int getDay(long slot)
     {
-        return this.mDay;
+        return (int)((slot >>> DAY_SHIFT) & FIELD_MASK);
     }
     
-    public int getTime()
+    public static int getTime(long slot)
     {
-        return this.mTime;
+        return (int)((slot >>> TIME_SHIFT) & FIELD_MASK);
     }
     
-    public int getLength()
+    public static int getLength(long slot)
     {
-        return this.mLength;
+        return (int)((slot >>> LENGTH_SHIFT) & FIELD_MASK);
     }
     
-    public int getSection()
+    public static int getSection(long slot)
     {
-        return mSection;
+        return (int)((slot >>> SECTION_SHIFT) & FIELD_MASK);
     }
     
-    public String getRoom()
+    /**
+     * @return the slot with a different length, validated the same as {@link #pack(int, int, int, int)}.
+     */
+    public static long withLength(long slot, int length)
     {
-        return this.mRoom;
+        return pack(getSection(slot), getDay(slot), getTime(slot), length);
     }
     
-    public void setDay(int day)
+    /**
+     * @return the slot as is, validated the same as {@link #pack(int, int, int, int)}.
+     */
+    public static long validate(long slot)
     {
-        if (day < 1 || day > 7)
-            throw new IllegalArgumentException("Invalid day value, should between 1 to 7.");
+        // bits outside the fields must be clear as well
+        if (withLength(slot, getLength(slot)) != slot)
+            throw new IllegalArgumentException("Invalid slot value, unknown bits are set.");
         
-        this.mDay = day;
+        return slot;
     }
     
-    public void setTime(int time)
+    public long getSlot()
     {
-        if (time < 0 || time > 23)
-            throw new IllegalArgumentException("Invalid time value, should between 0 to 23.");
-        
-        this.mTime = time;
+        return this.mSlot;
     }
     
-    public void setLength(int length)
+    public int getDay()
     {
-        if (length < 1)
-            throw new IllegalArgumentException("Invalid length value, should larger than or equal to 1.");
-        
-        this.mLength = length;
+        return getDay(mSlot);
     }
     
-    public void setSection(int section)
+    public int getTime()
     {
-        this.mSection = section;
+        return getTime(mSlot);
     }
     
-    public void setRoom(String room)
+    public int getLength()
     {
-        this.mRoom = room;
+        return getLength(mSlot);
     }
     
-    public JSONObject getJSONObject()
+    public int getSection()
     {
-        JSONObject json = new JSONObject();
-        
-        try
-        {
-            json.put(JSON_DAY,     mDay);
-            json.put(JSON_TIME,    mTime);
-            json.put(JSON_LENGTH,  mLength);
-            json.put(JSON_SECTION, mSection);
-            json.put(JSON_ROOM,    mRoom);
-        }
-        catch (JSONException e)
-        {
-            // Something went wrong
-            return null;
-        }
-        
-        return json;
+        return getSection(mSlot);
     }
     
-    public static Schedule restoreFromJSON(JSONObject json) throws JSONException
+    public String getRoom()
     {
-        int day     = json.getInt(JSON_DAY);
-        int time    = json.getInt(JSON_TIME);
-        int length  = json.getInt(JSON_LENGTH);
-        int section = json.getInt(JSON_SECTION);
-        
-        String room = json.getString(JSON_ROOM);
-
-        return new Schedule(section, day, time, length, room);
+        return this.mRoom;
     }
-
+    
     //=======================================
     // Parcelable
     // =======================================
@@ -174,12 +169,8 @@ final class Schedule implements Parcelable
      */
     private Schedule(Parcel parcel)
     {
-        mSection = parcel.readInt();
-        mDay     = parcel.readInt();
-        mTime    = parcel.readInt();
-        mLength  = parcel.readInt();
-        
-        mRoom    = parcel.readString();
+        mSlot = parcel.readLong();
+        mRoom = parcel.readString();
     }
 
     @Override
@@ -191,11 +182,7 @@ final class Schedule implements Parcelable
     @Override
     public void writeToParcel(Parcel dest, int flags)
     {
-        dest.writeInt(mSection);
-        dest.writeInt(mDay);
-        dest.writeInt(mTime);
-        dest.writeInt(mLength);
-        
+        dest.writeLong(mSlot);
         dest.writeString(mRoom);
     }
 
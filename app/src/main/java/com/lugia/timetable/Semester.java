@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.NoSuchElementException;
+
+/**
+ * Date range of a semester, the weekly schedules only happen within it and outside of the break weeks.
+ *
+ * Time is expressed as epoch minute, number of minute between 1970-01-01 00:00 and the local wall clock time,
+ * so expanding the schedules never need a Calendar.
+ */
+public final class Semester
+{
+    public static final int MINUTES_PER_DAY  = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    // semester without end date
+    public static final int NO_END = Integer.MAX_VALUE;
+
+    private static final String KEY_SEMESTER_START       = "semester_start";
+    private static final String KEY_SEMESTER_END         = "semester_end";
+    private static final String KEY_SEMESTER_BREAK_WEEKS = "semester_break_weeks";
+
+    private final int mStartDay;
+    private final int mEndDay;
+
+    // sorted week number, week 1 is the week containing the start day
+    private final int[] mBreakWeeks;
+
+    /**
+     * @param startDay epoch day of the first day of semester.
+     * @param endDay epoch day of the last day of semester, or {@link #NO_END}.
+     * @param breakWeeks week number of the break weeks, week 1 is the week containing the start day.
+     */
+    public Semester(int startDay, int endDay, int[] breakWeeks)
+    {
+        if (endDay < startDay)
+            throw new IllegalArgumentException("Semester end before it start.");
+
+        mStartDay   = startDay;
+        mEndDay     = endDay;
+        mBreakWeeks = breakWeeks != null ? breakWeeks.clone() : new int[0];
+
+        Arrays.sort(mBreakWeeks);
+    }
+
+    /**
+     * Semester without end date and break week, the schedules just repeat every week from the day.
+     */
+    public static Semester openEnded(int startDay)
+    {
+        return new Semester(startDay, NO_END, null);
+    }
+
+    /**
+     * Load the semester setting, fall back to an open ended semester start from today if it is not set.
+     */
+    public static Semester load(Context context)
+    {
+        int startDay = SettingActivity.getInt(context, KEY_SEMESTER_START, Integer.MIN_VALUE);
+        int endDay = SettingActivity.getInt(context, KEY_SEMESTER_END, NO_END);
+
+        if (startDay == Integer.MIN_VALUE || endDay < startDay)
+            return openEnded(toEpochDay(Calendar.getInstance()));
+
+        String breakWeeks = SettingActivity.getString(context, KEY_SEMESTER_BREAK_WEEKS, "");
+
+        return new Semester(startDay, endDay, parseWeeks(breakWeeks));
+    }
+
+    public void save(Context context)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        for (int week : mBreakWeeks)
+        {
+            if (builder.length() > 0)
+                builder.append(',');
+
+            builder.append(week);
+        }
+
+        SettingActivity.getSharedPreferences(context)
+                       .edit()
+                       .putInt(KEY_SEMESTER_START, mStartDay)
+                       .putInt(KEY_SEMESTER_END, mEndDay)
+                       .putString(KEY_SEMESTER_BREAK_WEEKS, builder.toString())
+                       .commit();
+    }
+
+    private static int[] parseWeeks(String source)
+    {
+        if (source.length() == 0)
+            return new int[0];
+
+        String[] parts = source.split(",");
+        int[] weeks = new int[parts.length];
+
+        int count = 0;
+
+        for (String part : parts)
+        {
+            try
+            {
+                weeks[count] = Integer.parseInt(part.trim());
+                count++;
+            }
+            catch (NumberFormatException e)
+            {
+                // skip broken entry
+            }
+        }
+
+        return Arrays.copyOf(weeks, count);
+    }
+
+    public int getStartDay()
+    {
+        return mStartDay;
+    }
+
+    public int getEndDay()
+    {
+        return mEndDay;
+    }
+
+    public int[] getBreakWeeks()
+    {
+        return mBreakWeeks.clone();
+    }
+
+    /**
+     * @return epoch day of the Sunday start the week 1.
+     */
+    public int getFirstWeekStart()
+    {
+        return weekStart(mStartDay);
+    }
+
+    /**
+     * @return week number of the epoch day, week 1 is the week containing the start day.
+     */
+    public int getWeek(int epochDay)
+    {
+        return floorDiv(epochDay - getFirstWeekStart(), 7) + 1;
+    }
+
+    public boolean isBreakWeek(int week)
+    {
+        return Arrays.binarySearch(mBreakWeeks, week) >= 0;
+    }
+
+    /**
+     * @return true if class is held on the epoch day.
+     */
+    public boolean isClassDay(int epochDay)
+    {
+        return epochDay >= mStartDay && epochDay <= mEndDay && !isBreakWeek(getWeek(epochDay));
+    }
+
+    /**
+     * Expand the schedules of the subject lazily, start from the epoch minute.
+     */
+    public OccurrenceIterator occurrences(Subject subject, long fromMinute)
+    {
+        return new OccurrenceIterator(this, subject, fromMinute);
+    }
+
+    // ======================================================
+    // Epoch minute
+    // ======================================================
+
+    /**
+     * @return epoch day of the Sunday on or before the epoch day.
+     */
+    public static int weekStart(int epochDay)
+    {
+        // 1970-01-01 is Thursday
+        return epochDay - floorMod(epochDay + 4, 7);
+    }
+
+    public static int toEpochDay(Calendar calendar)
+    {
+        return Event.toEpochDay(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    public static long toEpochMinute(Calendar calendar)
+    {
+        return (long)toEpochDay(calendar) * MINUTES_PER_DAY
+               + calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+    }
+
+    /**
+     * @param time time packed as hhmm, same as {@link Event#getTimeStart()}.
+     */
+    public static long toEpochMinute(int epochDay, int time)
+    {
+        return (long)epochDay * MINUTES_PER_DAY + (time / 100) * 60 + time % 100;
+    }
+
+    public static int getEpochDay(long epochMinute)
+    {
+        return (int)floorDiv(epochMinute, MINUTES_PER_DAY);
+    }
+
+    /**
+     * @return time of the day packed as hhmm.
+     */
+    public static int getTime(long epochMinute)
+    {
+        int minute = (int)(epochMinute - (long)getEpochDay(epochMinute) * MINUTES_PER_DAY);
+
+        return (minute / 60) * 100 + minute % 60;
+    }
+
+    /**
+     * Convert to milliseconds in current time zone, only this need a Calendar.
+     */
+    public static long toMillis(long epochMinute)
+    {
+        int date = Event.fromEpochDay(getEpochDay(epochMinute));
+        int time = getTime(epochMinute);
+
+        Calendar calendar = Calendar.getInstance();
+
+        calendar.clear();
+        calendar.set(date / 10000, (date / 100) % 100, date % 100, time / 100, time % 100, 0);
+
+        return calendar.getTimeInMillis();
+    }
+
+    private static int floorDiv(int x, int y)
+    {
+        int q = x / y;
+
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static long floorDiv(long x, long y)
+    {
+        long q = x / y;
+
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static int floorMod(int x, int y)
+    {
+        return x - floorDiv(x, y) * y;
+    }
+
+    /**
+     * Lazy iterator of the concrete class occurrences of a subject, in start time order.
+     *
+     * Nothing is allocated per occurrence, {@link #next()} return the start time as epoch minute and the
+     * schedule it come from can be read afterward.
+     */
+    public static final class OccurrenceIterator
+    {
+        private final Semester mSemester;
+
+        // minute offset from the start of week (Sunday 00:00) and the schedule index, packed as offset << 32 | index
+        private final long[] mOffsets;
+        private final long[] mSlots;
+
+        private final long mFromMinute;
+
+        private int mWeekStart;
+        private int mPosition;
+
+        private long mNext = -1;
+        private int mNextIndex = -1;
+
+        private int mCurrentIndex = -1;
+
+        OccurrenceIterator(Semester semester, Subject subject, long fromMinute)
+        {
+            mSemester = semester;
+
+            final int count = subject.getScheduleCount();
+
+            mSlots   = new long[count];
+            mOffsets = new long[count];
+
+            for (int i = 0; i < count; i++)
+            {
+                long slot = subject.getScheduleSlot(i);
+
+                // day 7 is another Sunday, fold it so the order within a week hold
+                int offset = (Schedule.getDay(slot) % 7) * MINUTES_PER_DAY + Schedule.getTime(slot) * 60;
+
+                mSlots[i]   = slot;
+                mOffsets[i] = ((long)offset << 32) | i;
+            }
+
+            Arrays.sort(mOffsets);
+
+            // dont go back before the semester start
+            mFromMinute = Math.max(fromMinute, (long)semester.mStartDay * MINUTES_PER_DAY);
+
+            mWeekStart = weekStart(getEpochDay(mFromMinute));
+            mPosition  = 0;
+
+            advance();
+        }
+
+        public boolean hasNext()
+        {
+            return mNext >= 0;
+        }
+
+        /**
+         * @return start time of the next occurrence as epoch minute.
+         */
+        public long next()
+        {
+            if (mNext < 0)
+                throw new NoSuchElementException();
+
+            long result = mNext;
+
+            mCurrentIndex = mNextIndex;
+
+            advance();
+
+            return result;
+        }
+
+        /**
+         * @return start time of the next occurrence without moving forward, or -1 if there is none.
+         */
+        public long peek()
+        {
+            return mNext;
+        }
+
+        /**
+         * @return index of the schedule in the subject of the occurrence last returned by {@link #next()}.
+         */
+        public int getScheduleIndex()
+        {
+            return mCurrentIndex;
+        }
+
+        /**
+         * @return packed schedule slot of the occurrence last returned by {@link #next()}.
+         */
+        public long getScheduleSlot()
+        {
+            return mSlots[mCurrentIndex];
+        }
+
+        private void advance()
+        {
+            mNext = -1;
+
+            if (mOffsets.length == 0)
+                return;
+
+            final int endDay = mSemester.mEndDay;
+
+            while (endDay == NO_END || mWeekStart <= endDay)
+            {
+                if (mPosition == 0 && mSemester.isBreakWeek(mSemester.getWeek(mWeekStart)))
+                {
+                    mWeekStart += 7;
+                    continue;
+                }
+
+                while (mPosition < mOffsets.length)
+                {
+                    long packed = mOffsets[mPosition++];
+                    long minute = (long)mWeekStart * MINUTES_PER_DAY + (packed >>> 32);
+                    int day = getEpochDay(minute);
+
+                    if (minute < mFromMinute || day < mSemester.mStartDay)
+                        continue;
+
+                    if (day > endDay)
+                        return;
+
+                    mNext      = minute;
+                    mNextIndex = (int)packed;
+
+                    return;
+                }
+
+                mPosition = 0;
+                mWeekStart += 7;
+            }
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Locale;
+
+// Same as CourseParser, this file strictly follow the structure of MMU ICEMS website, any change on the
+// website structure should be reflected on both parser.
+
+/**
+ * Streaming parser for course detail we get from MMU ICEMS.
+ *
+ * Instead of building the whole document tree like {@link CourseParser}, this parser tokenize the page
+ * while reading it, locate the "Registered Course" and "Schedule" anchor in a single pass and turn every
+ * table row into subject or schedule as soon as the row is closed.
+ */
+public class StreamCourseParser
+{
+    private static final int SECTION_NONE     = 0;
+    private static final int SECTION_COURSE   = 1;
+    private static final int SECTION_SCHEDULE = 2;
+
+    // where we are relative to the last anchor, the rows of a section are on the second table of the element
+    // right after the table that hold the anchor, same as what the DOM parser look for
+    private static final int SCOPE_NONE         = 0;
+    private static final int SCOPE_ANCHOR_TABLE = 1;
+    private static final int SCOPE_SIBLING      = 2;
+    private static final int SCOPE_CONTAINER    = 3;
+    private static final int SCOPE_ROWS         = 4;
+
+    private static final String ANCHOR_COURSE   = "registered course";
+    private static final String ANCHOR_SCHEDULE = "schedule";
+
+    private static final String ROW_BGCOLOR = "#ffffff";
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_CELLS   = 16;
+
+    private static final String TAG = "StreamCourseParser";
+
+    private final Reader mReader;
+
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPosition = 0;
+    private int mLength = 0;
+
+    private final ArrayList<Subject> mSubjectList = new ArrayList<Subject>();
+    private final CourseParser.ScheduleRowParser mScheduleParser = new CourseParser.ScheduleRowParser(mSubjectList);
+
+    private final StringBuilder mText = new StringBuilder();
+    private final StringBuilder mCell = new StringBuilder();
+    private final StringBuilder mTag  = new StringBuilder();
+
+    private final String[] mCells = new String[MAX_CELLS];
+    private int mCellCount = 0;
+
+    private int mSection = SECTION_NONE;
+
+    private int mScope = SCOPE_NONE;
+    private int mScopeSection = SECTION_NONE;
+    private int mScopeTableDepth = 0;
+
+    private String mContainerName = null;
+    private int mContainerDepth = 0;
+    private int mContainerTableCount = 0;
+
+    private int mTableDepth = 0;
+    private boolean mLayoutError = false;
+
+    private int mCourseAnchorCount = 0;
+    private int mScheduleAnchorCount = 0;
+
+    private boolean mInRow = false;
+    private boolean mInCell = false;
+    private int mNestedTableDepth = 0;
+
+    private int mColorCount = 0;
+
+    private StreamCourseParser(Reader reader)
+    {
+        mReader = reader;
+    }
+
+    /**
+     * Parse the course detail page read from reader.
+     *
+     * @param reader the reader of the page, it is not closed by this method.
+     *
+     * @return list of subject, or null if the page is not in expected format.
+     */
+    public static ArrayList<Subject> tryParse(Reader reader) throws IOException
+    {
+        return new StreamCourseParser(reader).parse();
+    }
+
+    private ArrayList<Subject> parse() throws IOException
+    {
+        int c;
+
+        while ((c = read()) != -1)
+        {
+            if (c == '<')
+            {
+                flushText();
+                readTag();
+            }
+            else if (c == '&')
+                appendText(readEntity());
+            else
+                appendText((char)c);
+        }
+
+        flushText();
+
+        if (mInRow)
+            endRow();
+
+        // the page ended before the table after the anchor is found
+        if (mScope != SCOPE_NONE && mScope != SCOPE_ROWS)
+            failScope();
+
+        // make sure both of the anchor are exists, and appear only once like the DOM parser expected
+        if (mCourseAnchorCount != 1)
+        {
+            Log.e(TAG, String.format("Expected 1 element for reg course, %d retrieved now.", mCourseAnchorCount));
+            return null;
+        }
+
+        if (mScheduleAnchorCount != 1)
+        {
+            Log.e(TAG, String.format("Expected 1 element for schedule, %d retrieved now.", mScheduleAnchorCount));
+            return null;
+        }
+
+        if (mLayoutError)
+        {
+            Log.e(TAG, "Unable to locate the table after the anchor.");
+            return null;
+        }
+
+        return mSubjectList;
+    }
+
+    // ======================================================
+    // Character input
+    // ======================================================
+
+    private int read() throws IOException
+    {
+        if (mPosition == mLength)
+        {
+            mLength = mReader.read(mBuffer, 0, BUFFER_SIZE);
+            mPosition = 0;
+
+            if (mLength <= 0)
+            {
+                mLength = 0;
+                return -1;
+            }
+        }
+
+        return mBuffer[mPosition++];
+    }
+
+    // ======================================================
+    // Text
+    // ======================================================
+
+    private void appendText(char c)
+    {
+        // collapse whitespace the same way as Element.text() does
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f')
+        {
+            int length = mText.length();
+
+            if (length > 0 && mText.charAt(length - 1) == ' ')
+                return;
+
+            c = ' ';
+        }
+
+        mText.append(c);
+    }
+
+    private void appendText(String s)
+    {
+        for (int i = 0; i < s.length(); i++)
+            appendText(s.charAt(i));
+    }
+
+    private void flushText()
+    {
+        if (mText.length() == 0)
+            return;
+
+        String lower = mText.toString().toLowerCase(Locale.US);
+
+        if (lower.contains(ANCHOR_COURSE))
+        {
+            mCourseAnchorCount++;
+
+            if (!mInRow)
+                beginScope(SECTION_COURSE);
+        }
+
+        if (lower.contains(ANCHOR_SCHEDULE))
+        {
+            mScheduleAnchorCount++;
+
+            if (!mInRow)
+                beginScope(SECTION_SCHEDULE);
+        }
+
+        if (mInCell && mNestedTableDepth == 0)
+        {
+            // keep a single space between text of different element
+            if (mText.charAt(0) == ' ' && mCell.length() > 0 && mCell.charAt(mCell.length() - 1) == ' ')
+                mCell.append(mText, 1, mText.length());
+            else
+                mCell.append(mText);
+        }
+
+        mText.setLength(0);
+    }
+
+    // ======================================================
+    // Section scope
+    // ======================================================
+
+    private void beginScope(int section)
+    {
+        mSection = SECTION_NONE;
+
+        // the previous anchor have not reach its table yet
+        if (mScope != SCOPE_NONE && mScope != SCOPE_ROWS)
+            mLayoutError = true;
+
+        // anchor that is not inside a table have no row table
+        if (mTableDepth == 0)
+        {
+            mLayoutError = true;
+            mScope = SCOPE_NONE;
+            return;
+        }
+
+        mScope = SCOPE_ANCHOR_TABLE;
+        mScopeSection = section;
+        mScopeTableDepth = mTableDepth;
+    }
+
+    private void failScope()
+    {
+        mLayoutError = true;
+        mScope = SCOPE_NONE;
+    }
+
+    private void scopeStartTag(String name)
+    {
+        boolean table = name.equals("table");
+
+        if (mScope == SCOPE_SIBLING)
+        {
+            // void element have no child, so there is no table inside
+            if (isVoidElement(name))
+            {
+                failScope();
+                return;
+            }
+
+            mScope = SCOPE_CONTAINER;
+            mContainerName = name;
+            mContainerDepth = 1;
+            mContainerTableCount = table ? 1 : 0;
+        }
+        else if (mScope == SCOPE_CONTAINER)
+        {
+            if (name.equals(mContainerName))
+                mContainerDepth++;
+
+            if (table && ++mContainerTableCount == 2)
+            {
+                mScope = SCOPE_ROWS;
+                mScopeTableDepth = mTableDepth;
+                mSection = mScopeSection;
+            }
+        }
+    }
+
+    private void scopeEndTag(String name)
+    {
+        boolean table = name.equals("table");
+
+        if (mScope == SCOPE_ANCHOR_TABLE)
+        {
+            if (table && mTableDepth < mScopeTableDepth)
+                mScope = SCOPE_SIBLING;
+        }
+        else if (mScope == SCOPE_SIBLING)
+        {
+            // parent of the anchor table is closed before any sibling element
+            failScope();
+        }
+        else if (mScope == SCOPE_CONTAINER)
+        {
+            if (name.equals(mContainerName) && --mContainerDepth == 0)
+                failScope();
+        }
+        else if (mScope == SCOPE_ROWS)
+        {
+            if (table && mTableDepth < mScopeTableDepth)
+            {
+                mScope = SCOPE_NONE;
+                mSection = SECTION_NONE;
+            }
+        }
+    }
+
+    private static boolean isVoidElement(String name)
+    {
+        return name.equals("br") || name.equals("hr") || name.equals("img") || name.equals("input")
+            || name.equals("meta") || name.equals("link");
+    }
+
+    private String readEntity() throws IOException
+    {
+        StringBuilder name = new StringBuilder();
+
+        int c;
+
+        // entity name are short, give up if it is too long
+        while (name.length() < 10 && (c = read()) != -1)
+        {
+            if (c == ';')
+                return decodeEntity(name.toString());
+
+            if (!Character.isLetterOrDigit(c) && c != '#')
+            {
+                // not an entity, treat everything as text and give back the last character
+                mPosition--;
+
+                return name.insert(0, '&').toString();
+            }
+
+            name.append((char)c);
+        }
+
+        return name.insert(0, '&').toString();
+    }
+
+    private static String decodeEntity(String name)
+    {
+        if (name.equals("nbsp"))
+            return "\u00a0";
+        if (name.equals("amp"))
+            return "&";
+        if (name.equals("lt"))
+            return "<";
+        if (name.equals("gt"))
+            return ">";
+        if (name.equals("quot"))
+            return "\"";
+        if (name.equals("apos"))
+            return "'";
+
+        if (name.length() > 1 && name.charAt(0) == '#')
+        {
+            try
+            {
+                int code;
+
+                if (name.charAt(1) == 'x' || name.charAt(1) == 'X')
+                    code = Integer.parseInt(name.substring(2), 16);
+                else
+                    code = Integer.parseInt(name.substring(1));
+
+                return String.valueOf((char)code);
+            }
+            catch (NumberFormatException e)
+            {
+                // fall through, keep it as text
+            }
+        }
+
+        return "&" + name + ";";
+    }
+
+    // ======================================================
+    // Tag
+    // ======================================================
+
+    private void readTag() throws IOException
+    {
+        mTag.setLength(0);
+
+        char quote = 0;
+        int c;
+
+        while ((c = read()) != -1)
+        {
+            if (quote != 0)
+            {
+                if (c == quote)
+                    quote = 0;
+            }
+            else if (c == '"' || c == '\'')
+                quote = (char)c;
+            else if (c == '>')
+                break;
+
+            mTag.append((char)c);
+
+            // comment may contain '>', skip until the real end of it
+            if (mTag.length() == 3 && mTag.charAt(0) == '!' && mTag.charAt(1) == '-' && mTag.charAt(2) == '-')
+            {
+                skipUntil("-->");
+                return;
+            }
+        }
+
+        if (mTag.length() == 0)
+            return;
+
+        boolean closing = mTag.charAt(0) == '/';
+
+        int start = closing ? 1 : 0;
+        int end = start;
+
+        while (end < mTag.length() && isTagNameChar(mTag.charAt(end)))
+            end++;
+
+        String name = mTag.substring(start, end).toLowerCase(Locale.US);
+
+        if (closing)
+            handleEndTag(name);
+        else
+            handleStartTag(name, end);
+    }
+
+    private static boolean isTagNameChar(char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':';
+    }
+
+    private void skipUntil(String terminator) throws IOException
+    {
+        int matched = 0;
+        int c;
+
+        while (matched < terminator.length() && (c = read()) != -1)
+        {
+            if (Character.toLowerCase((char)c) == terminator.charAt(matched))
+                matched++;
+            else
+                matched = Character.toLowerCase((char)c) == terminator.charAt(0) ? 1 : 0;
+        }
+    }
+
+    private void handleStartTag(String name, int attributeStart) throws IOException
+    {
+        if (name.equals("table"))
+            mTableDepth++;
+
+        scopeStartTag(name);
+
+        if (name.equals("script") || name.equals("style"))
+        {
+            // content of script and style are not text
+            skipUntil("</" + name);
+            skipUntil(">");
+        }
+        else if (name.equals("table"))
+        {
+            if (mInRow)
+                mNestedTableDepth++;
+        }
+        else if (mNestedTableDepth > 0)
+        {
+            // everything inside a nested table is part of the outer cell, ignore them
+        }
+        else if (name.equals("tr"))
+        {
+            // tr can be closed implicitly
+            if (mInRow)
+                endRow();
+
+            if (mSection != SECTION_NONE && isWhiteRow(attributeStart))
+            {
+                mInRow = true;
+                mCellCount = 0;
+            }
+        }
+        else if (name.equals("td") || name.equals("th"))
+        {
+            if (!mInRow)
+                return;
+
+            if (mInCell)
+                endCell();
+
+            mInCell = true;
+        }
+        else if (name.equals("br"))
+            appendText(' ');
+    }
+
+    private void handleEndTag(String name)
+    {
+        if (name.equals("table"))
+        {
+            if (mNestedTableDepth > 0)
+                mNestedTableDepth--;
+            else if (mInRow)
+                endRow();
+
+            if (mTableDepth > 0)
+                mTableDepth--;
+        }
+        else if (mNestedTableDepth > 0)
+        {
+            // ignore
+        }
+        else if (name.equals("tr"))
+        {
+            if (mInRow)
+                endRow();
+        }
+        else if (name.equals("td") || name.equals("th"))
+        {
+            if (mInCell)
+                endCell();
+        }
+
+        scopeEndTag(name);
+    }
+
+    private boolean isWhiteRow(int attributeStart)
+    {
+        // same as the "tr[bgcolor*=#ffffff]" selector, the value is compared case insensitively
+        String attributes = mTag.substring(attributeStart).toLowerCase(Locale.US);
+
+        int index = attributes.indexOf("bgcolor");
+
+        while (index != -1)
+        {
+            int valueStart = index + "bgcolor".length();
+
+            while (valueStart < attributes.length() && attributes.charAt(valueStart) == ' ')
+                valueStart++;
+
+            if (valueStart < attributes.length() && attributes.charAt(valueStart) == '=')
+            {
+                int valueEnd = valueStart + 1;
+
+                while (valueEnd < attributes.length() && attributes.charAt(valueEnd) == ' ')
+                    valueEnd++;
+
+                char quote = valueEnd < attributes.length() ? attributes.charAt(valueEnd) : 0;
+
+                int from = (quote == '"' || quote == '\'') ? valueEnd + 1 : valueEnd;
+                int to = (quote == '"' || quote == '\'') ? attributes.indexOf(quote, from) : attributes.indexOf(' ', from);
+
+                if (to == -1)
+                    to = attributes.length();
+
+                return attributes.substring(from, to).contains(ROW_BGCOLOR);
+            }
+
+            index = attributes.indexOf("bgcolor", valueStart);
+        }
+
+        return false;
+    }
+
+    // ======================================================
+    // Row
+    // ======================================================
+
+    private void endCell()
+    {
+        if (mCellCount < MAX_CELLS)
+            mCells[mCellCount] = mCell.toString().trim();
+
+        mCellCount++;
+
+        mCell.setLength(0);
+        mInCell = false;
+    }
+
+    private void endRow()
+    {
+        if (mInCell)
+            endCell();
+
+        mInRow = false;
+
+        // row with too many cell will never be a course or schedule row
+        if (mCellCount > MAX_CELLS)
+            return;
+
+        if (mSection == SECTION_COURSE)
+        {
+            Subject subject = CourseParser.parseCourseRow(mCells, mCellCount, mColorCount);
+
+            if (subject != null)
+            {
+                mColorCount++;
+
+                mSubjectList.add(subject);
+            }
+        }
+        else if (mSection == SECTION_SCHEDULE)
+            mScheduleParser.parseRow(mCells, mCellCount);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded pool of the strings that repeat a lot across timetables, such as subject code, section and room.
+ *
+ * Unlike {@link String#intern()}, the pool never grow beyond its capacity, once it is full the new value
+ * is returned as is and only the values already in the pool are shared.
+ */
+final class StringPool
+{
+    private static final int DEFAULT_CAPACITY = 4096;
+    
+    private static final StringPool DEFAULT = new StringPool(DEFAULT_CAPACITY);
+    
+    private final ConcurrentHashMap<String, String> mPool = new ConcurrentHashMap<String, String>();
+    
+    private final int mCapacity;
+    
+    public StringPool(int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity, should larger than or equal to 1.");
+        
+        mCapacity = capacity;
+    }
+    
+    /**
+     * Intern the value with the pool shared by the whole app.
+     */
+    public static String intern(String value)
+    {
+        return DEFAULT.get(value);
+    }
+    
+    /**
+     * @return the pooled instance equal to value, or value itself if it is not pooled.
+     */
+    public String get(String value)
+    {
+        if (value == null)
+            return null;
+        
+        String pooled = mPool.get(value);
+        
+        if (pooled != null)
+            return pooled;
+        
+        // size() is only an estimation while other thread is adding, the pool may go slightly over capacity
+        if (mPool.size() >= mCapacity)
+            return value;
+        
+        pooled = mPool.putIfAbsent(value, value);
+        
+        return pooled != null ? pooled : value;
+    }
+    
+    public int size()
+    {
+        return mPool.size();
+    }
+    
+    public void clear()
+    {
+        mPool.clear();
+    }
+}
@@ -20,10 +20,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.ArrayList;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.HashMap;
 
 final class Subject implements Parcelable
 {
@@ -35,9 +32,21 @@ final class Subject implements Parcelable
     private int mCreditHours;
     private int mColor;
     
-    private ArrayList<Schedule> mSchedule;
+    // schedules packed by Schedule.pack(), the room of every schedule is kept at the same index
+    private long[] mScheduleSlots = new long[INITIAL_SCHEDULE_CAPACITY];
+    private String[] mScheduleRooms = new String[INITIAL_SCHEDULE_CAPACITY];
+    private int mScheduleCount = 0;
+    
     private ArrayList<Event> mEvent;
     
+    // event by event id, event id is generated from time so it is unique in practice
+    private HashMap<Long, Event> mEventMap;
+    
+    // hours occupied by the schedules
+    private final WeekBitmap mOccupancy = new WeekBitmap();
+    
+    private OnEventChangeListener mOnEventChangeListener = null;
+    
     public static final String JSON_SUBJECT_CODE        = "subjectCode";
     public static final String JSON_SUBJECT_DESCRIPTION = "subjectDescription";
     public static final String JSON_LECTURE_SECTION     = "lecturerSection";
@@ -47,6 +56,8 @@ final class Subject implements Parcelable
     public static final String JSON_SUBJECT_SCHEDULE    = "schedule";
     public static final String JSON_SUBJECT_EVENT       = "event";
     
+    private static final int INITIAL_SCHEDULE_CAPACITY = 4;
+    
     private static final String TAG = "Subject";
     
     public Subject(String code, String description, String lecturer, String tutorial, int credit)
@@ -57,8 +68,8 @@ final class Subject implements Parcelable
         this.mTutorialSection    = tutorial;
         this.mCreditHours        = credit;
         
-        this.mSchedule = new ArrayList<Schedule>();
         this.mEvent    = new ArrayList<Event>();
+        this.mEventMap = new HashMap<Long, Event>();
     }
     
     public Subject(String code, String description, String lecturer, String tutorial, int credit, int color)
@@ -70,8 +81,8 @@ final class Subject implements Parcelable
         this.mCreditHours        = credit;
         this.mColor              = color;
         
-        this.mSchedule = new ArrayList<Schedule>();
         this.mEvent = new ArrayList<Event>();
+        this.mEventMap = new HashMap<Long, Event>();
     }
     
     public String getSubjectCode()
@@ -114,9 +125,41 @@ final class Subject implements Parcelable
         return mColor;
     }
     
+    /**
+     * @return a new list of view of every schedule, change of the list is not reflected to the subject.
+     */
     public ArrayList<Schedule> getSchedules()
     {
-        return this.mSchedule;
+        ArrayList<Schedule> schedules = new ArrayList<Schedule>(mScheduleCount);
+        
+        for (int i = 0; i < mScheduleCount; i++)
+            schedules.add(new Schedule(mScheduleSlots[i], mScheduleRooms[i]));
+        
+        return schedules;
+    }
+    
+    public int getScheduleCount()
+    {
+        return mScheduleCount;
+    }
+    
+    /**
+     * @return the packed slot of the schedule at index, unpack it with the static getter of {@link Schedule}.
+     */
+    public long getScheduleSlot(int index)
+    {
+        if (index < 0 || index >= mScheduleCount)
+            throw new IndexOutOfBoundsException("Invalid schedule index: " + index);
+        
+        return mScheduleSlots[index];
+    }
+    
+    public String getScheduleRoom(int index)
+    {
+        if (index < 0 || index >= mScheduleCount)
+            throw new IndexOutOfBoundsException("Invalid schedule index: " + index);
+        
+        return mScheduleRooms[index];
     }
 
     public ArrayList<Event> getEvents()
@@ -124,6 +167,27 @@ final class Subject implements Parcelable
         return this.mEvent;
     }
     
+    /**
+     * @return hours occupied by the schedules of this subject.
+     */
+    public WeekBitmap getOccupancy()
+    {
+        return mOccupancy;
+    }
+    
+    public boolean isFree(int day, int hour)
+    {
+        return !mOccupancy.isSet(day, hour);
+    }
+    
+    /**
+     * @return true if any schedule of this subject happen at the same hour as the other subject.
+     */
+    public boolean clashesWith(Subject subject)
+    {
+        return mOccupancy.intersects(subject.mOccupancy);
+    }
+    
     public void setSubjectCode(String mSubjectCode)
     {
         this.mSubjectCode = mSubjectCode;
@@ -154,6 +218,11 @@ final class Subject implements Parcelable
         this.mColor = color;
     }
     
+    public void setOnEventChangeListener(OnEventChangeListener listener)
+    {
+        this.mOnEventChangeListener = listener;
+    }
+    
     public boolean hasLectureSection()
     {
         return mLectureSection != null;
@@ -166,115 +235,262 @@ final class Subject implements Parcelable
     
     public void addSchedule(Schedule schedule)
     {
-        mSchedule.add(schedule);
+        addSchedule(schedule.getSlot(), schedule.getRoom());
     }
     
+    /**
+     * Add a schedule already packed by {@link Schedule#pack(int, int, int, int)}, it is not combined with others.
+     */
+    void addSchedule(long slot, String room)
+    {
+        Schedule.validate(slot);
+        
+        int day = Schedule.getDay(slot);
+        int time = Schedule.getTime(slot);
+        
+        // schedules restored from file come in sorted order, keep the order of schedules start at the same hour
+        if (mScheduleCount == 0 || compareSchedule(mScheduleSlots[mScheduleCount - 1], day, time) <= 0)
+            insertSchedule(mScheduleCount, slot, room);
+        else
+            insertSchedule(findScheduleIndex(day, time), slot, room);
+    }
+    
+    private static int compareSchedule(long slot, int day, int time)
+    {
+        int key = Schedule.getDay(slot) * WeekBitmap.HOUR_COUNT + Schedule.getTime(slot);
+        int other = day * WeekBitmap.HOUR_COUNT + time;
+        
+        return key < other ? -1 : (key == other ? 0 : 1);
+    }
+    
+    /**
+     * Add a one hour schedule, it is combined with the schedule right before or after it on the same day
+     * when both of them have the same section and room. Hours can be added in any order.
+     */
     public void addSchedule(int section, int day, int time, String room)
     {
-        for (Schedule sTime : mSchedule)
+        // schedules are sorted by day and time, index is the first schedule start at or after the hour
+        int index = findScheduleIndex(day, time);
+        
+        // schedules of other section or room can start at the same hours, so look through the whole day
+        // for the closest schedule with same section and room, not only the neighbour
+        int previous = -1;
+        
+        for (int i = index - 1; i >= 0 && Schedule.getDay(mScheduleSlots[i]) == day; i--)
         {
-            if (sTime.getDay() != day)
+            if (!isSameSchedule(i, section, day, room))
                 continue;
             
-            // we assume that the system does display the time in ascending order
-            // so we can directly combine them into one
-            if (sTime.getTime() + sTime.getLength() == time)
+            long slot = mScheduleSlots[i];
+            int end = Schedule.getTime(slot) + Schedule.getLength(slot);
+            
+            // same row appear twice
+            if (end > time)
+                return;
+            
+            if (end == time)
+                previous = i;
+            
+            break;
+        }
+        
+        int next = -1;
+        
+        for (int i = index; i < mScheduleCount && compareSchedule(mScheduleSlots[i], day, time + 1) <= 0; i++)
+        {
+            if (!isSameSchedule(i, section, day, room))
+                continue;
+            
+            // same row appear twice
+            if (Schedule.getTime(mScheduleSlots[i]) == time)
+                return;
+            
+            next = i;
+            
+            break;
+        }
+        
+        if (previous != -1)
+        {
+            long slot = mScheduleSlots[previous];
+            int length = Schedule.getLength(slot) + 1;
+            
+            // the hour fill the gap between two schedule, combine all of them
+            if (next != -1)
             {
-                sTime.setLength(sTime.getLength() + 1);
+                length += Schedule.getLength(mScheduleSlots[next]);
                 
-                return;
+                removeSchedule(next);
             }
+            
+            mScheduleSlots[previous] = Schedule.withLength(slot, length);
+            mOccupancy.set(day, time, 1);
         }
-        
-        Schedule sTime = new Schedule(section, day, time, 1, room);
-        mSchedule.add(sTime);
+        else if (next != -1)
+        {
+            int length = Schedule.getLength(mScheduleSlots[next]) + 1;
+            
+            removeSchedule(next);
+            
+            // start the next schedule one hour earlier, it go after the schedules already start at the hour
+            insertSchedule(findScheduleIndex(day, time + 1), Schedule.pack(section, day, time, length), room);
+        }
+        else
+            insertSchedule(index, Schedule.pack(section, day, time, 1), room);
     }
     
-    public void addEvent(Event event)
+    private boolean isSameSchedule(int index, int section, int day, String room)
     {
-        mEvent.add(event);
+        long slot = mScheduleSlots[index];
+        
+        if (Schedule.getDay(slot) != day || Schedule.getSection(slot) != section)
+            return false;
+        
+        String other = mScheduleRooms[index];
+        
+        return room == null ? other == null : room.equals(other);
     }
     
-    public void addEvent(String name, String venue, String note, int type, int date, int timeStart, int timeEnd)
+    /**
+     * @return index of the first schedule start at or after the hour.
+     */
+    private int findScheduleIndex(int day, int time)
     {
-        mEvent.add(new Event(name, venue, note, type, date, timeStart, timeEnd));
+        int key = day * WeekBitmap.HOUR_COUNT + time;
+        
+        int low = 0;
+        int high = mScheduleCount;
+        
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            long slot = mScheduleSlots[middle];
+            
+            if (Schedule.getDay(slot) * WeekBitmap.HOUR_COUNT + Schedule.getTime(slot) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        
+        return low;
     }
     
-    public boolean deleteEvent(long eventId)
+    private void insertSchedule(int index, long slot, String room)
     {
-        return mEvent.remove(findEvent(eventId));
+        if (mScheduleCount == mScheduleSlots.length)
+        {
+            int capacity = mScheduleSlots.length * 2;
+            
+            long[] slots = new long[capacity];
+            String[] rooms = new String[capacity];
+            
+            System.arraycopy(mScheduleSlots, 0, slots, 0, mScheduleCount);
+            System.arraycopy(mScheduleRooms, 0, rooms, 0, mScheduleCount);
+            
+            mScheduleSlots = slots;
+            mScheduleRooms = rooms;
+        }
+        
+        System.arraycopy(mScheduleSlots, index, mScheduleSlots, index + 1, mScheduleCount - index);
+        System.arraycopy(mScheduleRooms, index, mScheduleRooms, index + 1, mScheduleCount - index);
+        
+        mScheduleSlots[index] = slot;
+        mScheduleRooms[index] = room;
+        mScheduleCount++;
+        
+        mOccupancy.set(Schedule.getDay(slot), Schedule.getTime(slot), Schedule.getLength(slot));
     }
     
-    public Event findEvent(long eventId)
+    private void removeSchedule(int index)
     {
-        for (Event event : mEvent)
-            if (event.getId() == eventId)
-                return event;
+        System.arraycopy(mScheduleSlots, index + 1, mScheduleSlots, index, mScheduleCount - index - 1);
+        System.arraycopy(mScheduleRooms, index + 1, mScheduleRooms, index, mScheduleCount - index - 1);
         
-        return null;
+        mScheduleCount--;
+        mScheduleRooms[mScheduleCount] = null;
     }
     
-    public JSONObject getJSONObject()
+    public void addEvent(Event event)
     {
-        JSONObject json = new JSONObject();
+        mEvent.add(event);
         
-        try
-        {
-            json.put(JSON_SUBJECT_CODE,        mSubjectCode);
-            json.put(JSON_SUBJECT_DESCRIPTION, mSubjectDescription);
-            json.put(JSON_CREDIT_HOUR,         mCreditHours);
-            json.put(JSON_COLOR,               mColor);
-            
-            json.put(JSON_LECTURE_SECTION,  hasLectureSection()  ? mLectureSection  : JSONObject.NULL);
-            json.put(JSON_TUTORIAL_SECTION, hasTutorialSection() ? mTutorialSection : JSONObject.NULL);
-            
-            JSONArray timeArray = new JSONArray();
-            
-            for (Schedule time : mSchedule)
-                timeArray.put(time.getJSONObject());
-            
-            json.put(JSON_SUBJECT_SCHEDULE, timeArray);
-
-            JSONArray eventArray = new JSONArray();
-
-            for (Event event : mEvent)
-                eventArray.put(event.getJSONObject());
-
-            json.put(JSON_SUBJECT_EVENT, eventArray);
-        }
-        catch (JSONException e)
-        {
-            // something went wrong
-            return null;
-        }
+        // keep the first event of an id, same as a linear search
+        if (!mEventMap.containsKey(event.getId()))
+            mEventMap.put(event.getId(), event);
         
-        return json;
+        if (mOnEventChangeListener != null)
+            mOnEventChangeListener.onEventAdded(this, event);
+    }
+    
+    public void addEvent(String name, String venue, String note, int type, int date, int timeStart, int timeEnd)
+    {
+        addEvent(new Event(name, venue, note, type, date, timeStart, timeEnd));
     }
     
-    public static Subject restoreFromJSON(JSONObject json) throws JSONException
+    /**
+     * Change the detail of event, change the event through here instead of its setter so listener can
+     * reflect the new date and time.
+     */
+    public void updateEvent(Event event, String name, String venue, String note, int type, int date, int timeStart, int timeEnd)
     {
-        String subjectCode        = json.getString(JSON_SUBJECT_CODE);
-        String subjectDescription = json.getString(JSON_SUBJECT_DESCRIPTION);
-        int creditHours           = json.getInt(JSON_CREDIT_HOUR);
-        int color                 = json.getInt(JSON_COLOR);
+        event.setName(name);
+        event.setVenue(venue);
+        event.setNote(note);
+        event.setType(type);
+        event.setDate(date);
+        event.setTime(timeStart, timeEnd);
         
-        String lectureSection  = !json.isNull(JSON_LECTURE_SECTION)  ? json.getString(JSON_LECTURE_SECTION)  : null;
-        String tutorialSection = !json.isNull(JSON_TUTORIAL_SECTION) ? json.getString(JSON_TUTORIAL_SECTION) : null;
+        if (mOnEventChangeListener != null)
+            mOnEventChangeListener.onEventChanged(this, event);
+    }
+    
+    public boolean deleteEvent(long eventId)
+    {
+        Event event = mEventMap.remove(eventId);
         
-        Subject subject = new Subject(subjectCode, subjectDescription, lectureSection, tutorialSection, creditHours, color);
+        if (event == null)
+            return false;
         
-        JSONArray timeArray = json.getJSONArray(JSON_SUBJECT_SCHEDULE);
-        JSONArray eventArray = json.getJSONArray(JSON_SUBJECT_EVENT);
+        mEvent.remove(event);
         
-        for (int i = 0; i < timeArray.length(); i++)
-            subject.addSchedule(Schedule.restoreFromJSON(timeArray.getJSONObject(i)));
+        // another event may share the same id
+        for (Event other : mEvent)
+        {
+            if (other.getId() == eventId)
+            {
+                mEventMap.put(eventId, other);
+                break;
+            }
+        }
         
-        for (int i = 0; i < eventArray.length(); i++)
-            subject.addEvent(Event.restoreFromJSON(eventArray.getJSONObject(i)));
+        if (mOnEventChangeListener != null)
+            mOnEventChangeListener.onEventRemoved(this, event);
+        
+        return true;
+    }
+    
+    public Event findEvent(long eventId)
+    {
+        return mEventMap.get(eventId);
+    }
+    
+    /**
+     * @return an independent copy of the subject with its schedules and events, listener is not copied.
+     */
+    Subject copy()
+    {
+        Subject subject = new Subject(mSubjectCode, mSubjectDescription, mLectureSection, mTutorialSection, mCreditHours, mColor);
+        
+        for (int i = 0; i < mScheduleCount; i++)
+            subject.addSchedule(mScheduleSlots[i], mScheduleRooms[i]);
+        
+        for (Event event : mEvent)
+            subject.addEvent(new Event(event.getId(), event.getName(), event.getVenue(), event.getNote(),
+                                       event.getType(), event.getDate(), event.getTimeStart(), event.getTimeEnd()));
         
         return subject;
     }
-
+    
     //=======================================
     // Parcelable
     // =======================================
@@ -294,8 +510,23 @@ final class Subject implements Parcelable
         mCreditHours        = parcel.readInt();
         mColor              = parcel.readInt();
         
-        parcel.readTypedList(mSchedule = new ArrayList<Schedule>(), Schedule.CREATOR);
+        int scheduleCount = parcel.readInt();
+        
+        for (int i = 0; i < scheduleCount; i++)
+        {
+            long slot = parcel.readLong();
+            
+            // parcel is written in sorted order
+            insertSchedule(i, slot, StringPool.intern(parcel.readString()));
+        }
+        
         parcel.readTypedList(mEvent = new ArrayList<Event>(), Event.CREATOR);
+        
+        mEventMap = new HashMap<Long, Event>();
+        
+        for (Event event : mEvent)
+            if (!mEventMap.containsKey(event.getId()))
+                mEventMap.put(event.getId(), event);
     }
 
     @Override
@@ -315,7 +546,14 @@ final class Subject implements Parcelable
         dest.writeInt(mCreditHours);
         dest.writeInt(mColor);
 
-        dest.writeTypedList(mSchedule);
+        dest.writeInt(mScheduleCount);
+
+        for (int i = 0; i < mScheduleCount; i++)
+        {
+            dest.writeLong(mScheduleSlots[i]);
+            dest.writeString(mScheduleRooms[i]);
+        }
+
         dest.writeTypedList(mEvent);
     }
 
@@ -331,4 +569,16 @@ final class Subject implements Parcelable
             return new Subject[size];
         }
     };
+
+    /**
+     * Listener of event added to, changed or removed from a subject.
+     */
+    interface OnEventChangeListener
+    {
+        public void onEventAdded(Subject subject, Event event);
+        
+        public void onEventChanged(Subject subject, Event event);
+        
+        public void onEventRemoved(Subject subject, Event event);
+    }
 }
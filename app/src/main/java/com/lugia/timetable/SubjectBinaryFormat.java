@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the subject list, used as the save file instead of JSON.
+ *
+ * Layout, all number in big endian:
+ * <pre>
+ * int     magic "TTGB"
+ * short   version
+ * int     string count, followed by every string as int byte length and UTF-8 bytes
+ * int     subject count, followed by every subject:
+ *           int code, int description, int lecture section, int tutorial section (string index, -1 for null)
+ *           int credit hours, int color
+ *           int schedule count, followed by every schedule as long slot and int room
+ *           int event count, followed by every event as
+ *             long id, int name, int venue, int note, int type, int date, int time start, int time end
+ * int     CRC32 of everything before it, since version 2
+ * </pre>
+ * Every string appear once in the string table no matter how many time it is used.
+ */
+final class SubjectBinaryFormat
+{
+    public static final int MAGIC = 0x54544742; // "TTGB"
+
+    public static final int VERSION = 2;
+
+    // first version with checksum trailer
+    private static final int VERSION_CHECKSUM = 2;
+
+    private static final int NULL_STRING = -1;
+
+    // magic and version
+    private static final int HEADER_SIZE = 6;
+
+    // least bytes taken by a subject (strings, credit hours, color, schedule and event count),
+    // a schedule (slot, room) and an event (id, strings, type, date, time start, time end)
+    private static final int SUBJECT_SIZE  = 4 * 4 + 4 * 2 + 4 * 2;
+    private static final int SCHEDULE_SIZE = 8 + 4;
+    private static final int EVENT_SIZE    = 8 + 4 * 3 + 4 * 4;
+
+    // prevent user to instantiate using default constructor
+    private SubjectBinaryFormat() { }
+
+    /**
+     * @return true if the header is the magic number of this format, only the first 4 bytes are checked.
+     */
+    public static boolean isBinary(byte[] header, int length)
+    {
+        if (length < 4)
+            return false;
+
+        int magic = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16) | ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+
+        return magic == MAGIC;
+    }
+
+    public static void write(OutputStream stream, List<Subject> subjects) throws IOException
+    {
+        // collect the strings first, so subject data can refer to them by index
+        StringTable table = new StringTable();
+
+        for (Subject subject : subjects)
+        {
+            table.add(subject.getSubjectCode());
+            table.add(subject.getSubjectDescription());
+            table.add(subject.getLectureSection());
+            table.add(subject.getTutorialSection());
+
+            for (int i = 0; i < subject.getScheduleCount(); i++)
+                table.add(subject.getScheduleRoom(i));
+
+            for (Event event : subject.getEvents())
+            {
+                table.add(event.getName());
+                table.add(event.getVenue());
+                table.add(event.getNote());
+            }
+        }
+
+        CheckedOutputStream checked = new CheckedOutputStream(stream, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        out.writeInt(table.mStrings.size());
+
+        for (String string : table.mStrings)
+        {
+            byte[] bytes = string.getBytes("UTF-8");
+
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(subjects.size());
+
+        for (Subject subject : subjects)
+        {
+            out.writeInt(table.indexOf(subject.getSubjectCode()));
+            out.writeInt(table.indexOf(subject.getSubjectDescription()));
+            out.writeInt(table.indexOf(subject.getLectureSection()));
+            out.writeInt(table.indexOf(subject.getTutorialSection()));
+
+            out.writeInt(subject.getCreditHours());
+            out.writeInt(subject.getColor());
+
+            final int scheduleCount = subject.getScheduleCount();
+
+            out.writeInt(scheduleCount);
+
+            for (int i = 0; i < scheduleCount; i++)
+            {
+                out.writeLong(subject.getScheduleSlot(i));
+                out.writeInt(table.indexOf(subject.getScheduleRoom(i)));
+            }
+
+            ArrayList<Event> events = subject.getEvents();
+
+            out.writeInt(events.size());
+
+            for (Event event : events)
+            {
+                out.writeLong(event.getId());
+                out.writeInt(table.indexOf(event.getName()));
+                out.writeInt(table.indexOf(event.getVenue()));
+                out.writeInt(table.indexOf(event.getNote()));
+                out.writeInt(event.getType());
+                out.writeInt(event.getDate());
+                out.writeInt(event.getTimeStart());
+                out.writeInt(event.getTimeEnd());
+            }
+        }
+
+        // checksum is not part of itself, write it straight to the underlying stream
+        out.flush();
+
+        int checksum = (int)checked.getChecksum().getValue();
+
+        new DataOutputStream(stream).writeInt(checksum);
+    }
+
+    /**
+     * Read the subjects into the list.
+     *
+     * The whole data is read and its checksum verified before anything is decoded, and every count is
+     * checked against the bytes left, so a damaged file never allocate more than its own size.
+     *
+     * @throws IOException if the data is not in this format, truncated, corrupted or written by a newer version.
+     */
+    public static void read(InputStream stream, ArrayList<Subject> subjects) throws IOException
+    {
+        byte[] data = readAll(stream);
+
+        if (data.length < HEADER_SIZE)
+            throw new IOException("Not a binary subject list.");
+
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+
+        if (header.readInt() != MAGIC)
+            throw new IOException("Not a binary subject list.");
+
+        int version = header.readUnsignedShort();
+
+        if (version > VERSION)
+            throw new IOException("Unsupported version: " + version);
+
+        int end = data.length;
+
+        if (version >= VERSION_CHECKSUM)
+        {
+            if (end < HEADER_SIZE + 4)
+                throw new IOException("Truncated subject list.");
+
+            end -= 4;
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, end);
+
+            int checksum = new DataInputStream(new ByteArrayInputStream(data, end, 4)).readInt();
+
+            if (checksum != (int)crc.getValue())
+                throw new IOException("Checksum mismatch.");
+        }
+
+        ByteArrayInputStream body = new ByteArrayInputStream(data, HEADER_SIZE, end - HEADER_SIZE);
+        DataInputStream in = new DataInputStream(body);
+
+        String[] strings = new String[readCount(body, in, 4)];
+
+        for (int i = 0; i < strings.length; i++)
+        {
+            int length = readCount(body, in, 1);
+
+            // codes, sections and rooms repeat a lot across students, share them
+            strings[i] = StringPool.intern(new String(data, end - body.available(), length, "UTF-8"));
+
+            in.skipBytes(length);
+        }
+
+        int subjectCount = readCount(body, in, SUBJECT_SIZE);
+
+        // dont hand out half read subjects
+        ArrayList<Subject> result = new ArrayList<Subject>(subjectCount);
+
+        try
+        {
+            for (int i = 0; i < subjectCount; i++)
+            {
+                String code        = getString(strings, in.readInt());
+                String description = getString(strings, in.readInt());
+                String lecture     = getString(strings, in.readInt());
+                String tutorial    = getString(strings, in.readInt());
+
+                int creditHours = in.readInt();
+                int color       = in.readInt();
+
+                Subject subject = new Subject(code, description, lecture, tutorial, creditHours, color);
+
+                int scheduleCount = readCount(body, in, SCHEDULE_SIZE);
+
+                for (int j = 0; j < scheduleCount; j++)
+                {
+                    long slot = in.readLong();
+
+                    subject.addSchedule(slot, getString(strings, in.readInt()));
+                }
+
+                int eventCount = readCount(body, in, EVENT_SIZE);
+
+                for (int j = 0; j < eventCount; j++)
+                {
+                    long id      = in.readLong();
+                    String name  = getString(strings, in.readInt());
+                    String venue = getString(strings, in.readInt());
+                    String note  = getString(strings, in.readInt());
+
+                    int type      = in.readInt();
+                    int date      = in.readInt();
+                    int timeStart = in.readInt();
+                    int timeEnd   = in.readInt();
+
+                    subject.addEvent(new Event(id, name, venue, note, type, date, timeStart, timeEnd));
+                }
+
+                result.add(subject);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // schedule out of range
+            throw new IOException("Invalid subject list: " + e.getMessage());
+        }
+
+        subjects.addAll(result);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+
+        while ((count = in.read(buffer)) != -1)
+            out.write(buffer, 0, count);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @param size minimum number of bytes taken by each item counted.
+     */
+    private static int readCount(ByteArrayInputStream body, DataInputStream in, int size) throws IOException
+    {
+        int count = in.readInt();
+
+        if (count < 0 || (long)count * size > body.available())
+            throw new IOException("Invalid count: " + count);
+
+        return count;
+    }
+
+    private static String getString(String[] strings, int index) throws IOException
+    {
+        if (index == NULL_STRING)
+            return null;
+
+        if (index < 0 || index >= strings.length)
+            throw new IOException("Invalid string index: " + index);
+
+        return strings[index];
+    }
+
+    private static final class StringTable
+    {
+        final ArrayList<String> mStrings = new ArrayList<String>();
+        final HashMap<String, Integer> mIndexes = new HashMap<String, Integer>();
+
+        void add(String string)
+        {
+            if (string != null && !mIndexes.containsKey(string))
+            {
+                mIndexes.put(string, mStrings.size());
+                mStrings.add(string);
+            }
+        }
+
+        int indexOf(String string)
+        {
+            return string == null ? NULL_STRING : mIndexes.get(string);
+        }
+    }
+}
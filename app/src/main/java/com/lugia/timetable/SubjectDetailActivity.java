@@ -121,7 +121,7 @@ public class SubjectDetailActivity extends FragmentActivity
         {
             long eventId = intentExtra.getLong(EXTRA_EVENT_ID, -1);
             
-            Event event = mSubject.findEvent(eventId);
+            Event event = subjectList.findEvent(eventId);
             
             if (event != null)
             {
@@ -409,7 +409,7 @@ public class SubjectDetailActivity extends FragmentActivity
     }
 
     // Fragment class for event list
-    public static class EventFragment extends Fragment implements AdapterView.OnItemClickListener, EventDetailDialogFragment.OnEventDeletedListener
+    public static class EventFragment extends Fragment implements AdapterView.OnItemClickListener, SubjectList.OnChangeListener
     {
         private EventAdapter mEventAdapter;
         
@@ -435,22 +435,82 @@ public class SubjectDetailActivity extends FragmentActivity
             listView.setEmptyView(view.findViewById(R.id.empty));
             listView.setAdapter(mEventAdapter);
             listView.setOnItemClickListener(EventFragment.this);
+            
+            // event added, edited or deleted elsewhere will be delivered here
+            SubjectList.getInstance(getActivity()).addOnChangeListener(EventFragment.this);
 
             return view;
         }
-
+        
         @Override
-        public void onResume()
+        public void onDestroyView()
         {
-            super.onResume();
+            super.onDestroyView();
             
-            // update the event list
-            if (mEventAdapter != null)
+            SubjectList.getInstance(getActivity()).removeOnChangeListener(EventFragment.this);
+        }
+        
+        @Override
+        public void onSubjectListChanged(List<SubjectList.Change> changes)
+        {
+            // subject replaced by a new instance after resync, reloading it cover every other change as well
+            for (SubjectList.Change change : changes)
             {
-                mEventAdapter.clear();
-                mEventAdapter.addAll(mSubject.getEvents());
-                mEventAdapter.notifyDataSetChanged();
+                if (change.getType() == SubjectList.Change.TYPE_SUBJECT_CHANGED && reloadSubject())
+                    return;
+            }
+            
+            boolean changed = false;
+            
+            mEventAdapter.setNotifyOnChange(false);
+            
+            for (SubjectList.Change change : changes)
+            {
+                if (!change.isEventChange() || change.getSubject() != mSubject)
+                    continue;
+                
+                switch (change.getType())
+                {
+                    case SubjectList.Change.TYPE_EVENT_ADDED:
+                        mEventAdapter.add(change.getEvent());
+                        break;
+                        
+                    case SubjectList.Change.TYPE_EVENT_DELETED:
+                        mEventAdapter.remove(change.getEvent());
+                        break;
+                        
+                    // updated event is the same object, only need to redraw
+                }
+                
+                changed = true;
             }
+            
+            if (changed)
+                mEventAdapter.notifyDataSetChanged();
+            else
+                mEventAdapter.setNotifyOnChange(true);
+        }
+        
+        /**
+         * Look up the subject again by subject code and show its events.
+         * 
+         * @return true if the subject is replaced by another instance.
+         */
+        private boolean reloadSubject()
+        {
+            Subject subject = SubjectList.getInstance(getActivity()).findSubject(mSubject.getSubjectCode());
+            
+            if (subject == null || subject == mSubject)
+                return false;
+            
+            mSubject = subject;
+            
+            mEventAdapter.setNotifyOnChange(false);
+            mEventAdapter.clear();
+            mEventAdapter.addAll(mSubject.getEvents());
+            mEventAdapter.notifyDataSetChanged();
+            
+            return true;
         }
         
         @Override
@@ -464,23 +524,10 @@ public class SubjectDetailActivity extends FragmentActivity
             args.putLong(EventDetailDialogFragment.EXTRA_EVENT_ID, event.getId());
             
             EventDetailDialogFragment f = EventDetailDialogFragment.newInstance(args);
-            f.setEventUpdateListener(EventFragment.this);
             
             f.show(getActivity().getFragmentManager(), event.getName());
         }
 
-        @Override
-        public void onEventDeleted()
-        {
-            // update the event list
-            if (mEventAdapter != null)
-            {
-                mEventAdapter.clear();
-                mEventAdapter.addAll(mSubject.getEvents());
-                mEventAdapter.notifyDataSetChanged();
-            }
-        }
-        
         class EventAdapter extends ArrayAdapter<Event>
         {
             public EventAdapter(Context context, int textViewResourceId)
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Case insensitive index of subject by subject code.
+ */
+final class SubjectIndex
+{
+    private final HashMap<String, Subject> mMap = new HashMap<String, Subject>();
+
+    /**
+     * Add subject to the index, the first subject added for a subject code win, same as a linear search.
+     */
+    public void put(Subject subject)
+    {
+        if (subject.getSubjectCode() == null)
+            return;
+
+        String key = toKey(subject.getSubjectCode());
+
+        if (!mMap.containsKey(key))
+            mMap.put(key, subject);
+    }
+
+    public Subject get(String subjectCode)
+    {
+        if (subjectCode == null)
+            return null;
+
+        return mMap.get(toKey(subjectCode));
+    }
+
+    public void clear()
+    {
+        mMap.clear();
+    }
+
+    public void rebuild(List<Subject> subjects)
+    {
+        mMap.clear();
+
+        for (Subject subject : subjects)
+            put(subject);
+    }
+
+    private static String toKey(String subjectCode)
+    {
+        return subjectCode.toUpperCase(Locale.US);
+    }
+}
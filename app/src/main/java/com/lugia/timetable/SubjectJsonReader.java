@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+/**
+ * Streaming reader of the JSON subject list, the format of the save file before the binary one.
+ *
+ * Subjects, schedules and events are built straight from the token stream, neither the whole file as a
+ * string nor a JSONObject tree is ever held in memory.
+ */
+final class SubjectJsonReader
+{
+    // prevent user to instantiate using default constructor
+    private SubjectJsonReader() { }
+
+    /**
+     * Read the subjects into the list, the list is left untouched if anything went wrong.
+     *
+     * @throws IOException if the data is not a valid subject list.
+     */
+    public static void read(InputStream stream, String charset, ArrayList<Subject> subjects) throws IOException
+    {
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, charset));
+
+        ArrayList<Subject> result = new ArrayList<Subject>();
+        boolean found = false;
+
+        try
+        {
+            reader.beginObject();
+
+            while (reader.hasNext())
+            {
+                if (reader.nextName().equals(SubjectList.JSON_SUBJECT_ARRAY))
+                {
+                    reader.beginArray();
+
+                    while (reader.hasNext())
+                        result.add(readSubject(reader));
+
+                    reader.endArray();
+
+                    found = true;
+                }
+                else
+                    reader.skipValue();
+            }
+
+            reader.endObject();
+        }
+        catch (IllegalStateException e)
+        {
+            // JsonReader report unexpected token this way
+            throw new IOException("Malformed subject list: " + e.getMessage());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid number in subject list: " + e.getMessage());
+        }
+        catch (IllegalArgumentException e)
+        {
+            // schedule out of range
+            throw new IOException("Invalid subject list: " + e.getMessage());
+        }
+
+        if (!found)
+            throw new IOException("No subject list found.");
+
+        subjects.addAll(result);
+    }
+
+    private static Subject readSubject(JsonReader reader) throws IOException
+    {
+        String code = null;
+        String description = null;
+        String lectureSection = null;
+        String tutorialSection = null;
+
+        int creditHours = 0;
+        int color = 0;
+
+        // schedules and events may come before the subject detail, keep them until the subject is created
+        ArrayList<Long> slots = new ArrayList<Long>();
+        ArrayList<String> rooms = new ArrayList<String>();
+        ArrayList<Event> events = new ArrayList<Event>();
+
+        reader.beginObject();
+
+        while (reader.hasNext())
+        {
+            String name = reader.nextName();
+
+            if (name.equals(Subject.JSON_SUBJECT_CODE))
+                code = StringPool.intern(nextString(reader));
+            else if (name.equals(Subject.JSON_SUBJECT_DESCRIPTION))
+                description = nextString(reader);
+            else if (name.equals(Subject.JSON_LECTURE_SECTION))
+                lectureSection = StringPool.intern(nextString(reader));
+            else if (name.equals(Subject.JSON_TUTORIAL_SECTION))
+                tutorialSection = StringPool.intern(nextString(reader));
+            else if (name.equals(Subject.JSON_CREDIT_HOUR))
+                creditHours = reader.nextInt();
+            else if (name.equals(Subject.JSON_COLOR))
+                color = reader.nextInt();
+            else if (name.equals(Subject.JSON_SUBJECT_SCHEDULE))
+            {
+                reader.beginArray();
+
+                while (reader.hasNext())
+                    readSchedule(reader, slots, rooms);
+
+                reader.endArray();
+            }
+            else if (name.equals(Subject.JSON_SUBJECT_EVENT))
+            {
+                reader.beginArray();
+
+                while (reader.hasNext())
+                    events.add(readEvent(reader));
+
+                reader.endArray();
+            }
+            else
+                reader.skipValue();
+        }
+
+        reader.endObject();
+
+        if (code == null)
+            throw new IOException("Subject without subject code.");
+
+        Subject subject = new Subject(code, description, lectureSection, tutorialSection, creditHours, color);
+
+        for (int i = 0; i < slots.size(); i++)
+            subject.addSchedule(slots.get(i), rooms.get(i));
+
+        for (Event event : events)
+            subject.addEvent(event);
+
+        return subject;
+    }
+
+    private static void readSchedule(JsonReader reader, ArrayList<Long> slots, ArrayList<String> rooms) throws IOException
+    {
+        int day = 0;
+        int time = 0;
+        int length = 0;
+        int section = 0;
+
+        String room = null;
+
+        reader.beginObject();
+
+        while (reader.hasNext())
+        {
+            String name = reader.nextName();
+
+            if (name.equals(Schedule.JSON_DAY))
+                day = reader.nextInt();
+            else if (name.equals(Schedule.JSON_TIME))
+                time = reader.nextInt();
+            else if (name.equals(Schedule.JSON_LENGTH))
+                length = reader.nextInt();
+            else if (name.equals(Schedule.JSON_SECTION))
+                section = reader.nextInt();
+            else if (name.equals(Schedule.JSON_ROOM))
+                room = StringPool.intern(nextString(reader));
+            else
+                reader.skipValue();
+        }
+
+        reader.endObject();
+
+        // validate the same way as a schedule created in other way
+        slots.add(Schedule.pack(section, day, time, length));
+        rooms.add(room);
+    }
+
+    private static Event readEvent(JsonReader reader) throws IOException
+    {
+        long id = 0;
+
+        String name = null;
+        String venue = null;
+        String note = null;
+
+        int type = 0;
+        int date = 0;
+        int timeStart = 0;
+        int timeEnd = 0;
+
+        reader.beginObject();
+
+        while (reader.hasNext())
+        {
+            String key = reader.nextName();
+
+            if (key.equals(Event.JSON_ID))
+                id = reader.nextLong();
+            else if (key.equals(Event.JSON_NAME))
+                name = nextString(reader);
+            else if (key.equals(Event.JSON_VENUE))
+                venue = nextString(reader);
+            else if (key.equals(Event.JSON_NOTE))
+                note = nextString(reader);
+            else if (key.equals(Event.JSON_TYPE))
+                type = reader.nextInt();
+            else if (key.equals(Event.JSON_DATE))
+                date = reader.nextInt();
+            else if (key.equals(Event.JSON_TIME_START))
+                timeStart = reader.nextInt();
+            else if (key.equals(Event.JSON_TIME_END))
+                timeEnd = reader.nextInt();
+            else
+                reader.skipValue();
+        }
+
+        reader.endObject();
+
+        return new Event(id, name, venue, note, type, date, timeStart, timeEnd);
+    }
+
+    /**
+     * @return the string, or null if the value is JSON null.
+     */
+    private static String nextString(JsonReader reader) throws IOException
+    {
+        if (reader.peek() == JsonToken.NULL)
+        {
+            reader.nextNull();
+
+            return null;
+        }
+
+        return reader.nextString();
+    }
+}
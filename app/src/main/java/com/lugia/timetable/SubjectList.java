@@ -16,34 +16,195 @@
 
 package com.lugia.timetable;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.util.ArrayList;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 /* Singleton Class
  * Initialize technique: Initialization-on-demand holder idiom (IODHI)
+ *
+ * The subjects are held in an immutable snapshot, every change create a new snapshot and swap it in
+ * atomically. Reader iterate the snapshot they get without locking and never see a half replaced list.
  */
-public class SubjectList extends ArrayList<Subject>
+public class SubjectList implements Iterable<Subject>
 {
     // only use on first initialization
     private static Context mContext;
     
-    private static final String JSON_SUBJECT_ARRAY = "timeTable";
+    static final String JSON_SUBJECT_ARRAY = "timeTable";
     private static final String SAVEFILE = "data.ttg";
     
+    private static final String JOURNAL_FILE = "data.ttj";
+    
+    // journal larger than this is compacted into the save file
+    private static final long JOURNAL_COMPACT_SIZE = 64 * 1024;
+    
+    private static final String TEMP_SUFFIX   = ".tmp";
+    private static final String BACKUP_SUFFIX = ".bak";
+    
+    private static final String JSON_CHARSET = "UTF-8";
+    
+    // changes happen within a frame are delivered together
+    private static final long CHANGE_DISPATCH_DELAY = 16;
+    
     private static final String TAG = "SubjectList";
     
+    private final SubjectIndex mSubjectIndex = new SubjectIndex();
+    private final EventIndex mEventIndex = new EventIndex();
+    private final EventDateIndex mEventDateIndex = new EventDateIndex();
+    private final EventIntervalTree mEventIntervalTree = new EventIntervalTree();
+    
+    private final SaveQueue mSaveQueue = new SaveQueue(new SaveQueue.Writer()
+    {
+        @Override
+        public byte[] serialize()
+        {
+            return SubjectList.this.serialize();
+        }
+        
+        @Override
+        public boolean write(byte[] data)
+        {
+            // the stored fingerprint belong to the save file on disk, forget it before the file is replaced
+            if (mFingerprintStale)
+            {
+                mFingerprintStale = false;
+                
+                PageFingerprintCache.clearStoredFingerprint(mContext);
+            }
+            
+            if (!writeFile(mContext.getFilesDir(), data, null))
+                return false;
+            
+            // every change in journal is in the save file now
+            getJournal(mContext).reset();
+            
+            return true;
+        }
+        
+        @Override
+        public boolean append(byte[] record)
+        {
+            EventJournal journal = getJournal(mContext);
+            
+            if (!journal.append(record))
+            {
+                // cannot keep the change in journal, write everything instead
+                mSaveQueue.request();
+                
+                return false;
+            }
+            
+            // replaying a long journal cost more than loading the save file, compact it
+            if (journal.length() > JOURNAL_COMPACT_SIZE)
+                mSaveQueue.request();
+            
+            return true;
+        }
+    });
+    
+    private volatile Snapshot mSnapshot = new Snapshot(new ArrayList<Subject>(), 0);
+    
+    // subjects that the event index is listening to
+    private final ArrayList<Subject> mIndexedSubjects = new ArrayList<Subject>();
+    
+    // version of the snapshot when the index was built
+    private long mIndexVersion = -1;
+    
+    // save file was in the JSON format of older version
+    private boolean mLegacyFormatLoaded = false;
+    
+    // subjects no longer match the course page that the stored fingerprint come from
+    private volatile boolean mFingerprintStale = false;
+    
+    private final CopyOnWriteArrayList<OnChangeListener> mOnChangeListeners = new CopyOnWriteArrayList<OnChangeListener>();
+    
+    // changes waiting to be delivered, guarded by itself
+    private final ArrayList<Change> mPendingChanges = new ArrayList<Change>();
+    private boolean mDispatchScheduled = false;
+    
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    
+    private final Runnable mDispatchRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            dispatchChanges();
+        }
+    };
+    
+    // keep the event index up to date when event is added or deleted through the subject
+    private final Subject.OnEventChangeListener mOnEventChangeListener = new Subject.OnEventChangeListener()
+    {
+        @Override
+        public void onEventAdded(Subject subject, Event event)
+        {
+            synchronized (SubjectList.this)
+            {
+                mEventIndex.put(subject, event);
+                mEventDateIndex.put(subject, event);
+                mEventIntervalTree.put(event);
+            }
+            
+            mSaveQueue.append(EventJournal.encodeAdd(subject, event));
+            
+            publishChange(new Change(Change.TYPE_EVENT_ADDED, subject, event));
+        }
+        
+        @Override
+        public void onEventChanged(Subject subject, Event event)
+        {
+            synchronized (SubjectList.this)
+            {
+                // date or time may changed, place it again
+                mEventDateIndex.put(subject, event);
+                mEventIntervalTree.put(event);
+            }
+            
+            mSaveQueue.append(EventJournal.encodeUpdate(subject, event));
+            
+            publishChange(new Change(Change.TYPE_EVENT_UPDATED, subject, event));
+        }
+        
+        @Override
+        public void onEventRemoved(Subject subject, Event event)
+        {
+            synchronized (SubjectList.this)
+            {
+                mEventIndex.remove(event);
+                mEventDateIndex.remove(event);
+                mEventIntervalTree.remove(event);
+                
+                // another event may share the same id
+                Event other = subject.findEvent(event.getId());
+                
+                if (other != null)
+                    mEventIndex.put(subject, other);
+            }
+            
+            mSaveQueue.append(EventJournal.encodeDelete(subject, event.getId()));
+            
+            publishChange(new Change(Change.TYPE_EVENT_DELETED, subject, event));
+        }
+    };
+    
     /* SINGLETON HOLDER */
     private static class InstanceHolder
     {
@@ -64,84 +225,485 @@ public class SubjectList extends ArrayList<Subject>
     {
         Log.i(TAG, "Construct Singleton");
         
-        File file = new File(mContext.getFilesDir(), SAVEFILE);
+        File directory = mContext.getFilesDir();
         
-        if (!file.exists())
-            return;
-    
-        try
+        ArrayList<Subject> subjects = loadFile(new File(directory, SAVEFILE));
+        
+        // save may be interrupted between the two renames, the temporary file is complete if its checksum match
+        if (subjects == null)
+            subjects = loadFile(new File(directory, SAVEFILE + TEMP_SUFFIX));
+        
+        if (subjects == null)
         {
-            FileInputStream in = mContext.openFileInput(SAVEFILE);
-    
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-    
-            StringBuilder builder = new StringBuilder();
-            String line;
-    
-            while ((line = reader.readLine()) != null)
-                builder.append(line);
-    
-            reader.close();
+            // last save may be interrupted, fall back to the previous generation
+            subjects = loadFile(new File(directory, SAVEFILE + BACKUP_SUFFIX));
             
-            // Dont hanging subject list in imcomplete state
-            if (!extractJSON(builder.toString()))
-                clear();
+            if (subjects != null)
+                Log.w(TAG, "Save file is damaged, restored from backup.");
         }
-        catch (Exception e)
+        
+        if (subjects == null)
+            subjects = new ArrayList<Subject>();
+        
+        // event changes since the save file
+        int replayed = getJournal(mContext).replay(subjects);
+        
+        if (replayed > 0)
+            Log.i(TAG, "Replayed " + replayed + " event change from journal.");
+        
+        // Dont hanging subject list in imcomplete state
+        if (!subjects.isEmpty())
+            mSnapshot = new Snapshot(subjects, 1);
+        
+        // start listening to event change of the subjects
+        rebuildIndex();
+        
+        if (mLegacyFormatLoaded)
         {
-            // something went wrong
-            Log.e(TAG, "Error on loading subject list!", e);
+            Log.i(TAG, "Migrating save file to binary format.");
+            
+            mSaveQueue.request();
         }
     }
     
-    public Subject findSubject(String subjectCode)
+    /**
+     * Listen to the change of subject list, listener is always called on main thread.
+     */
+    public void addOnChangeListener(OnChangeListener listener)
+    {
+        mOnChangeListeners.addIfAbsent(listener);
+    }
+    
+    public void removeOnChangeListener(OnChangeListener listener)
+    {
+        mOnChangeListeners.remove(listener);
+    }
+    
+    /**
+     * @return the current snapshot of the subjects, it never change even the list is replaced later.
+     */
+    public Snapshot getSnapshot()
+    {
+        return mSnapshot;
+    }
+    
+    public int size()
+    {
+        return mSnapshot.size();
+    }
+    
+    public boolean isEmpty()
+    {
+        return mSnapshot.isEmpty();
+    }
+    
+    public Subject get(int index)
     {
-        for (Subject subject : this)
-            if (subject.getSubjectCode().equalsIgnoreCase(subjectCode))
-                return subject;
+        return mSnapshot.get(index);
+    }
+    
+    /**
+     * Iterate the snapshot at the time this method called.
+     */
+    @Override
+    public Iterator<Subject> iterator()
+    {
+        return mSnapshot.iterator();
+    }
+    
+    public synchronized void add(Subject subject)
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>(mSnapshot.mSubjects);
         
-        return null;
+        subjects.add(subject);
+        
+        swap(subjects);
     }
-
+    
+    public synchronized boolean remove(Subject subject)
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>(mSnapshot.mSubjects);
+        
+        if (!subjects.remove(subject))
+            return false;
+        
+        swap(subjects);
+        
+        return true;
+    }
+    
+    public synchronized void clear()
+    {
+        swap(new ArrayList<Subject>());
+    }
+    
+    /**
+     * Subject code is not changed once the subject is in the list, a subject with a different code is
+     * added as a new subject instead.
+     */
+    public synchronized Subject findSubject(String subjectCode)
+    {
+        // any change of the list create a new snapshot, rebuild the index lazily
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        return mSubjectIndex.get(subjectCode);
+    }
+    
+    /**
+     * Find the event with event id from all subject.
+     */
+    public synchronized Event findEvent(long eventId)
+    {
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        return mEventIndex.getEvent(eventId);
+    }
+    
+    /**
+     * @return the subject that own the event with event id, or null if there is no such event.
+     */
+    public synchronized Subject findEventSubject(long eventId)
+    {
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        return mEventIndex.getSubject(eventId);
+    }
+    
+    public boolean deleteEvent(long eventId)
+    {
+        Subject subject = findEventSubject(eventId);
+        
+        return subject != null && subject.deleteEvent(eventId);
+    }
+    
+    /**
+     * @param fromDate first date, inclusive, packed same as {@link Event#getDate()}.
+     * @param toDate last date, inclusive.
+     *
+     * @return events of all subject between the two date, ordered by date and start time.
+     */
+    public synchronized ArrayList<Event> eventsBetween(int fromDate, int toDate)
+    {
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        return mEventDateIndex.eventsBetween(fromDate, toDate);
+    }
+    
+    /**
+     * @return the first events of all subject that start on or after the date and time, ordered by date and start time.
+     */
+    public synchronized ArrayList<Event> nextEvents(int date, int time, int count)
+    {
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        return mEventDateIndex.nextEvents(date, time, count);
+    }
+    
+    /**
+     * @param date the date, packed same as {@link Event#getDate()}.
+     * @param timeStart start of the period, packed same as {@link Event#getTimeStart()}.
+     * @param timeEnd end of the period, exclusive.
+     *
+     * @return events of all subject overlapping the period, ordered by start time.
+     */
+    public synchronized ArrayList<Event> findOverlappingEvents(int date, int timeStart, int timeEnd)
+    {
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        return mEventIntervalTree.findOverlapping(date, timeStart, timeEnd);
+    }
+    
+    /**
+     * @return classes and events of all subject start from the epoch minute, merged and ordered by start time.
+     */
+    public synchronized Agenda getAgenda(Semester semester, long fromMinute)
+    {
+        if (mIndexVersion != mSnapshot.mVersion)
+            rebuildIndex();
+        
+        // events are taken from the index while locked, the snapshot never change, so no lock is needed while the agenda is paged
+        return new Agenda(semester, mSnapshot.asList(), mEventDateIndex, fromMinute);
+    }
+    
+    /**
+     * @return the first events of all subject that start from now on, ordered by date and start time.
+     */
+    public ArrayList<Event> nextEvents(int count)
+    {
+        Calendar calendar = Calendar.getInstance();
+        
+        int date = calendar.get(Calendar.YEAR) * 10000 + calendar.get(Calendar.MONTH) * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+        int time = calendar.get(Calendar.HOUR_OF_DAY) * 100 + calendar.get(Calendar.MINUTE);
+        
+        return nextEvents(date, time, count);
+    }
+    
+    /**
+     * @return hours occupied by the schedules of all subject.
+     */
+    public WeekBitmap getOccupancy()
+    {
+        // caller may modify it, dont give out the one of snapshot
+        return new WeekBitmap(mSnapshot.mOccupancy);
+    }
+    
+    public boolean isFree(int day, int hour)
+    {
+        return !mSnapshot.mOccupancy.isSet(day, hour);
+    }
+    
+    /**
+     * @return the hours of the day between fromHour and toHour (exclusive) without any schedule, in ascending order.
+     */
+    public int[] getFreeHours(int day, int fromHour, int toHour)
+    {
+        return mSnapshot.mOccupancy.getFreeHours(day, fromHour, toHour);
+    }
+    
+    /**
+     * @return subjects having schedule at the same hour as the subject, the subject itself is excluded.
+     */
+    public ArrayList<Subject> findClashingSubjects(Subject subject)
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+        
+        for (Subject other : this)
+            if (other != subject && other.clashesWith(subject))
+                subjects.add(other);
+        
+        return subjects;
+    }
+    
+    /**
+     * Replace all subject in current list with the content of newList in one step.
+     */
+    public synchronized void replace(List<Subject> newList)
+    {
+        swap(new ArrayList<Subject>(newList));
+    }
+    
+    /**
+     * @return fingerprint of the course page that the subject list come from, or null if the subject list
+     *         come from other account or has been changed since.
+     */
+    public String getCoursePageFingerprint(String account)
+    {
+        if (mFingerprintStale)
+            return null;
+        
+        return PageFingerprintCache.getStoredFingerprint(mContext, account);
+    }
+    
+    /**
+     * Save the subject list in background, requests made in a short period are written once.
+     */
+    public void requestSave()
+    {
+        mSaveQueue.request();
+    }
+    
+    /**
+     * Start the pending save right away, call it before the app go to background.
+     */
+    public void flush()
+    {
+        mSaveQueue.flush();
+    }
+    
     /**
-     * Remove all subject in current list and copy the content of newList to current list.
+     * Wait until every save requested so far is written.
+     *
+     * @return true if the last save succeeded.
      */
-    public void replace(ArrayList<Subject> newList)
+    public boolean awaitSaved(long timeout, TimeUnit unit)
     {
-        clear();
-        addAll(newList);
+        return mSaveQueue.await(timeout, unit);
     }
     
-    public boolean saveToFile(Context context)
+    private byte[] serialize()
     {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
         try
         {
-            FileOutputStream out = context.openFileOutput(SAVEFILE, Context.MODE_PRIVATE);
-            BufferedOutputStream stream = new BufferedOutputStream(out);
-
-            stream.write(generateJSON().toString().getBytes());
+            SubjectBinaryFormat.write(out, mSnapshot.asList());
+        }
+        catch (IOException e)
+        {
+            // something went wrong
+            Log.e(TAG, "Error on serialize!", e);
 
-            stream.flush();
-            stream.close();
+            return null;
+        }
+        
+        return out.toByteArray();
+    }
+    
+    private static EventJournal getJournal(Context context)
+    {
+        return new EventJournal(new File(context.getFilesDir(), JOURNAL_FILE));
+    }
+    
+    // phases of writeFile, index of the time spent on each of them
+    static final int WRITE_PHASE_WRITE  = 0;
+    static final int WRITE_PHASE_SYNC   = 1;
+    static final int WRITE_PHASE_RENAME = 2;
+    static final int WRITE_PHASE_COUNT  = 3;
+    
+    /**
+     * Replace the save file atomically, the data is written to a temporary file and synced before renamed
+     * to the save file, the previous save file is kept as backup. Save file is never left half written.
+     * 
+     * @param phaseNanos receive the time spent on writing, syncing and renaming, can be null.
+     */
+    static boolean writeFile(File directory, byte[] data, long[] phaseNanos)
+    {
+        File file   = new File(directory, SAVEFILE);
+        File temp   = new File(directory, SAVEFILE + TEMP_SUFFIX);
+        File backup = new File(directory, SAVEFILE + BACKUP_SUFFIX);
+        
+        long start = System.nanoTime();
+        long written;
+        long synced;
+        
+        try
+        {
+            FileOutputStream out = new FileOutputStream(temp);
 
-            out.close();
+            try
+            {
+                out.write(data);
+                out.flush();
+                
+                written = System.nanoTime();
+                
+                // make sure the data reach the disk before the rename does
+                out.getFD().sync();
+            }
+            finally
+            {
+                out.close();
+            }
+            
+            synced = System.nanoTime();
         }
         catch (Exception e)
         {
             // something went wrong
             Log.e(TAG, "Error on save!", e);
+            
+            temp.delete();
 
             return false;
         }
+        
+        // keep the current generation, it is the fallback if the new one is damaged somehow
+        if (file.exists())
+        {
+            backup.delete();
+            
+            if (!file.renameTo(backup))
+                Log.w(TAG, "Fail to keep backup of save file.");
+        }
+        
+        if (!temp.renameTo(file))
+        {
+            Log.e(TAG, "Error on save, fail to rename temporary file!");
+            
+            return false;
+        }
+        
+        long end = System.nanoTime();
+        
+        if (phaseNanos != null)
+        {
+            phaseNanos[WRITE_PHASE_WRITE]  = written - start;
+            phaseNanos[WRITE_PHASE_SYNC]   = synced - written;
+            phaseNanos[WRITE_PHASE_RENAME] = end - synced;
+        }
+        
+        Log.d(TAG, String.format("Saved %d bytes in %.2f ms, sync %.2f ms", data.length, (end - start) / 1e6, (synced - written) / 1e6));
 
         return true;
     }
     
+    /**
+     * @return subjects in the file, or null if the file does not exist or is damaged.
+     */
+    private ArrayList<Subject> loadFile(File file)
+    {
+        if (!file.exists())
+            return null;
+        
+        try
+        {
+            BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+            
+            ArrayList<Subject> subjects = new ArrayList<Subject>();
+            
+            try
+            {
+                readSubjects(in, subjects);
+                
+                return subjects;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (Exception e)
+        {
+            // something went wrong
+            Log.e(TAG, "Error on loading " + file.getName() + "!", e);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Read the save file, it may be a binary snapshot or the JSON written by older version.
+     */
+    private void readSubjects(BufferedInputStream in, ArrayList<Subject> subjects) throws IOException
+    {
+        byte[] header = new byte[4];
+        
+        in.mark(header.length);
+        
+        int length = 0;
+        int count;
+        
+        while (length < header.length && (count = in.read(header, length, header.length - length)) != -1)
+            length += count;
+        
+        in.reset();
+        
+        if (SubjectBinaryFormat.isBinary(header, length))
+        {
+            SubjectBinaryFormat.read(in, subjects);
+        }
+        else
+        {
+            SubjectJsonReader.read(in, JSON_CHARSET, subjects);
+            
+            // convert to binary, so the next start does not parse JSON again
+            mLegacyFormatLoaded = true;
+        }
+    }
+    
     public void displaySubjectListContent()
     {
-        Log.d(TAG ,String.format("%d subject in total.\n", size()));
+        Snapshot snapshot = mSnapshot;
+        
+        Log.d(TAG ,String.format("%d subject in total.\n", snapshot.size()));
         
-        for (Subject subject : this)
+        for (Subject subject : snapshot)
         {
             Log.v(TAG ,String.format("Subject Code: %s",        subject.getSubjectCode()       ));
             Log.v(TAG ,String.format("Subject Description: %s", subject.getSubjectDescription()));
@@ -164,51 +726,296 @@ public class SubjectList extends ArrayList<Subject>
         }
     }
     
-    private boolean extractJSON(String source)
+    private void swap(ArrayList<Subject> subjects)
     {
-        JSONObject object;
-        JSONArray array;
-
-        try
+        Snapshot previous = mSnapshot;
+        
+        mSnapshot = new Snapshot(subjects, previous.mVersion + 1);
+        
+        // subjects no longer match the course page downloaded last time, the stored fingerprint is
+        // cleared by the next save, dont touch the preferences here
+        mFingerprintStale = true;
+        
+        // listen to event change of the new subjects right away, so no change is missed
+        rebuildIndex();
+        
+        publishChanges(previous.mSubjects, mSnapshot.mSubjects);
+    }
+    
+    // ======================================================
+    // Change notification
+    // ======================================================
+    
+    private void publishChanges(List<Subject> previous, List<Subject> current)
+    {
+        IdentityHashMap<Subject, Boolean> previousSet = new IdentityHashMap<Subject, Boolean>();
+        IdentityHashMap<Subject, Boolean> currentSet  = new IdentityHashMap<Subject, Boolean>();
+        
+        for (Subject subject : previous)
+            previousSet.put(subject, Boolean.TRUE);
+        
+        for (Subject subject : current)
+            currentSet.put(subject, Boolean.TRUE);
+        
+        // subject replaced by another one with the same code, usually after resync
+        SubjectIndex removedIndex = new SubjectIndex();
+        
+        for (Subject subject : previous)
         {
-            object = new JSONObject(source);
-
-            array = object.getJSONArray(JSON_SUBJECT_ARRAY);
-
-            for (int i = 0; i < array.length(); i++)
-                add(Subject.restoreFromJSON(array.getJSONObject(i)));
+            if (!currentSet.containsKey(subject))
+                removedIndex.put(subject);
         }
-        catch (Exception e)
+        
+        for (Subject subject : current)
         {
-            // Something went wrong
-            Log.e(TAG, "Error on extract JSON", e);
-
-            return false;
+            if (previousSet.containsKey(subject))
+                continue;
+            
+            Subject replaced = removedIndex.get(subject.getSubjectCode());
+            
+            if (replaced != null)
+            {
+                previousSet.remove(replaced);
+                
+                publishChange(new Change(Change.TYPE_SUBJECT_CHANGED, subject, null));
+            }
+            else
+                publishChange(new Change(Change.TYPE_SUBJECT_ADDED, subject, null));
+        }
+        
+        for (Subject subject : previous)
+        {
+            if (previousSet.containsKey(subject) && !currentSet.containsKey(subject))
+                publishChange(new Change(Change.TYPE_SUBJECT_REMOVED, subject, null));
         }
-
-        return true;
     }
-
-    private JSONObject generateJSON()
+    
+    private void publishChange(Change change)
     {
-        JSONObject rootObject  = new JSONObject();
-        JSONArray subjectArray = new JSONArray();
-
-        try
+        synchronized (mPendingChanges)
         {
-            for (Subject subject : this)
-                subjectArray.put(subject.getJSONObject());
-
-            rootObject.put(JSON_SUBJECT_ARRAY, subjectArray);
+            if (!coalesce(change))
+                mPendingChanges.add(change);
+            
+            if (!mDispatchScheduled)
+            {
+                mDispatchScheduled = true;
+                
+                mHandler.postDelayed(mDispatchRunnable, CHANGE_DISPATCH_DELAY);
+            }
         }
-        catch (JSONException e)
+    }
+    
+    /**
+     * Merge the change with pending change of the same subject or event.
+     *
+     * @return true if the change need not to be added anymore.
+     */
+    private boolean coalesce(Change change)
+    {
+        for (int i = mPendingChanges.size() - 1; i >= 0; i--)
         {
-            // Something went wrong
-            Log.e(TAG, "Error on generate JSON", e);
-
-            return null;
+            Change pending = mPendingChanges.get(i);
+            
+            if (pending.mSubject != change.mSubject || pending.mEvent != change.mEvent)
+                continue;
+            
+            // same change twice
+            if (pending.mType == change.mType)
+                return true;
+            
+            switch (change.mType)
+            {
+                case Change.TYPE_EVENT_UPDATED:
+                    // listener will see the latest detail on event added anyway
+                    if (pending.mType == Change.TYPE_EVENT_ADDED)
+                        return true;
+                    
+                    break;
+                    
+                case Change.TYPE_EVENT_DELETED:
+                    // event added and deleted within the same frame, listener need not to know it
+                    if (pending.mType == Change.TYPE_EVENT_ADDED)
+                    {
+                        mPendingChanges.remove(i);
+                        return true;
+                    }
+                    
+                    // no need to update an event going to be deleted
+                    if (pending.mType == Change.TYPE_EVENT_UPDATED)
+                        mPendingChanges.remove(i);
+                    
+                    break;
+                    
+                case Change.TYPE_SUBJECT_REMOVED:
+                    if (pending.mType == Change.TYPE_SUBJECT_ADDED)
+                    {
+                        mPendingChanges.remove(i);
+                        return true;
+                    }
+                    
+                    break;
+            }
         }
-
-        return rootObject;
+        
+        return false;
+    }
+    
+    private void dispatchChanges()
+    {
+        ArrayList<Change> changes;
+        
+        synchronized (mPendingChanges)
+        {
+            changes = new ArrayList<Change>(mPendingChanges);
+            
+            mPendingChanges.clear();
+            mDispatchScheduled = false;
+        }
+        
+        if (changes.isEmpty())
+            return;
+        
+        List<Change> unmodifiableChanges = Collections.unmodifiableList(changes);
+        
+        for (OnChangeListener listener : mOnChangeListeners)
+            listener.onSubjectListChanged(unmodifiableChanges);
+    }
+    
+    private void rebuildIndex()
+    {
+        Snapshot snapshot = mSnapshot;
+        
+        for (Subject subject : mIndexedSubjects)
+            subject.setOnEventChangeListener(null);
+        
+        mIndexedSubjects.clear();
+        mIndexedSubjects.addAll(snapshot.mSubjects);
+        
+        for (Subject subject : mIndexedSubjects)
+            subject.setOnEventChangeListener(mOnEventChangeListener);
+        
+        mSubjectIndex.rebuild(snapshot.mSubjects);
+        mEventIndex.rebuild(snapshot.mSubjects);
+        mEventDateIndex.rebuild(snapshot.mSubjects);
+        mEventIntervalTree.rebuild(snapshot.mSubjects);
+        
+        mIndexVersion = snapshot.mVersion;
+    }
+    
+    /**
+     * Immutable list of subject at a moment.
+     */
+    public static final class Snapshot implements Iterable<Subject>
+    {
+        private final List<Subject> mSubjects;
+        private final long mVersion;
+        
+        // hours occupied by any subject, built once for every version like the indexes
+        private final WeekBitmap mOccupancy = new WeekBitmap();
+        
+        private Snapshot(ArrayList<Subject> subjects, long version)
+        {
+            mSubjects = Collections.unmodifiableList(subjects);
+            mVersion  = version;
+            
+            for (Subject subject : subjects)
+                mOccupancy.or(subject.getOccupancy());
+        }
+        
+        /**
+         * @return version of the snapshot, increase on every change of the list.
+         */
+        public long getVersion()
+        {
+            return mVersion;
+        }
+        
+        public int size()
+        {
+            return mSubjects.size();
+        }
+        
+        public boolean isEmpty()
+        {
+            return mSubjects.isEmpty();
+        }
+        
+        public Subject get(int index)
+        {
+            return mSubjects.get(index);
+        }
+        
+        public List<Subject> asList()
+        {
+            return mSubjects;
+        }
+        
+        @Override
+        public Iterator<Subject> iterator()
+        {
+            return mSubjects.iterator();
+        }
+    }
+    
+    /**
+     * A change of the subject list.
+     */
+    public static final class Change
+    {
+        public static final int TYPE_SUBJECT_ADDED   = 1;
+        public static final int TYPE_SUBJECT_REMOVED = 2;
+        
+        // subject replaced by another one with the same subject code, its detail or schedule may changed
+        public static final int TYPE_SUBJECT_CHANGED = 3;
+        
+        public static final int TYPE_EVENT_ADDED     = 4;
+        public static final int TYPE_EVENT_UPDATED   = 5;
+        public static final int TYPE_EVENT_DELETED   = 6;
+        
+        private final int mType;
+        private final Subject mSubject;
+        private final Event mEvent;
+        
+        Change(int type, Subject subject, Event event)
+        {
+            mType    = type;
+            mSubject = subject;
+            mEvent   = event;
+        }
+        
+        public int getType()
+        {
+            return mType;
+        }
+        
+        /**
+         * @return the subject changed, or the subject owning the changed event.
+         */
+        public Subject getSubject()
+        {
+            return mSubject;
+        }
+        
+        /**
+         * @return the changed event, or null if this is a change of subject.
+         */
+        public Event getEvent()
+        {
+            return mEvent;
+        }
+        
+        public boolean isEventChange()
+        {
+            return mEvent != null;
+        }
+    }
+    
+    public interface OnChangeListener
+    {
+        /**
+         * @param changes changes happened since last call, in the order they happen.
+         */
+        public void onSubjectListChanged(List<Change> changes);
     }
 }
@@ -29,7 +29,9 @@ import android.widget.TextView;
 import android.content.Context;
 import android.content.Intent;
 
-public class SubjectListFragment extends Fragment implements AdapterView.OnItemClickListener
+import java.util.List;
+
+public class SubjectListFragment extends Fragment implements AdapterView.OnItemClickListener, SubjectList.OnChangeListener
 {
     private LayoutInflater mLayoutInflater;
     
@@ -64,9 +66,81 @@ public class SubjectListFragment extends Fragment implements AdapterView.OnItemC
         for (Subject subject : subjectList)
             mSubjectAdaptor.add(subject);
         
+        subjectList.addOnChangeListener(SubjectListFragment.this);
+        
         return view;
     }
     
+    @Override
+    public void onDestroyView()
+    {
+        super.onDestroyView();
+        
+        SubjectList.getInstance(getActivity()).removeOnChangeListener(SubjectListFragment.this);
+    }
+    
+    @Override
+    public void onSubjectListChanged(List<SubjectList.Change> changes)
+    {
+        boolean changed = false;
+        
+        // notify the list view once for all the changes
+        mSubjectAdaptor.setNotifyOnChange(false);
+        
+        for (SubjectList.Change change : changes)
+        {
+            Subject subject = change.getSubject();
+            
+            switch (change.getType())
+            {
+                case SubjectList.Change.TYPE_SUBJECT_ADDED:
+                    mSubjectAdaptor.add(subject);
+                    changed = true;
+                    break;
+                    
+                case SubjectList.Change.TYPE_SUBJECT_REMOVED:
+                    mSubjectAdaptor.remove(subject);
+                    changed = true;
+                    break;
+                    
+                case SubjectList.Change.TYPE_SUBJECT_CHANGED:
+                {
+                    // keep the new subject at the position of the one it replace
+                    int position = findPosition(subject.getSubjectCode());
+                    
+                    if (position >= 0)
+                    {
+                        mSubjectAdaptor.remove(mSubjectAdaptor.getItem(position));
+                        mSubjectAdaptor.insert(subject, position);
+                    }
+                    else
+                        mSubjectAdaptor.add(subject);
+                    
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        
+        if (changed)
+            mSubjectAdaptor.notifyDataSetChanged();
+        else
+            mSubjectAdaptor.setNotifyOnChange(true);
+    }
+    
+    private int findPosition(String subjectCode)
+    {
+        final int count = mSubjectAdaptor.getCount();
+        
+        for (int i = 0; i < count; i++)
+        {
+            if (mSubjectAdaptor.getItem(i).getSubjectCode().equalsIgnoreCase(subjectCode))
+                return i;
+        }
+        
+        return -1;
+    }
+    
     public void onItemClick(AdapterView<?> parent, View v, int position, long id)
     {
         Subject subject = mSubjectAdaptor.getItem(position);
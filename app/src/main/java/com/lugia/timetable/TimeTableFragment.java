@@ -26,8 +26,9 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import java.util.Calendar;
+import java.util.List;
 
-public class TimeTableFragment extends Fragment implements TimeTableLayout.OnItemClickListener
+public class TimeTableFragment extends Fragment implements TimeTableLayout.OnItemClickListener, SubjectList.OnChangeListener
 {
     private TimeTableLayout mTimeTable;
     
@@ -60,33 +61,10 @@ public class TimeTableFragment extends Fragment implements TimeTableLayout.OnIte
         SubjectList subjects = SubjectList.getInstance(getActivity());
         
         for (Subject subject : subjects)
-        {
-            int colorIndex = subject.getColor();
-            
-            for (Schedule schedule: subject.getSchedules())
-            {
-                View child = inflater.inflate(R.layout.item_time_table_schedule, mTimeTable, false);
-                child.setBackgroundResource(mBackgrounds[colorIndex]);
-                child.setTag(subject.getSubjectCode());
-                
-                TextView subjectCodeTextView = (TextView)child.findViewById(R.id.text_subject_code);
-                TextView subjectDescriptionTextView = (TextView)child.findViewById(R.id.text_subject_description);
-                TextView sectionTextView = (TextView)child.findViewById(R.id.text_section);
-                TextView roomTextView = (TextView)child.findViewById(R.id.text_room);
-                
-                subjectCodeTextView.setText(subject.getSubjectCode());
-                subjectDescriptionTextView.setText(subject.getSubjectDescription());
-                sectionTextView.setText(subject.getSection(schedule.getSection()));
-                roomTextView.setText(schedule.getRoom());
-                
-                subjectCodeTextView.setTextColor(mColors[colorIndex]);
-                subjectDescriptionTextView.setTextColor(mColors[colorIndex]);
-                sectionTextView.setTextColor(mColors[colorIndex]);
-                roomTextView.setTextColor(mColors[colorIndex]);
-                
-                mTimeTable.addView(child, schedule.getDay(), schedule.getTime(), schedule.getLength());
-            }
-        }
+            addSubjectViews(inflater, subject);
+        
+        // update only the views of changed subject afterward
+        subjects.addOnChangeListener(TimeTableFragment.this);
 
         mTimeTable.setOnDayChangedListener((MasterActivity)getActivity());
         mTimeTable.setOnItemClickListener(TimeTableFragment.this);
@@ -110,6 +88,97 @@ public class TimeTableFragment extends Fragment implements TimeTableLayout.OnIte
         return view;
     }
     
+    @Override
+    public void onDestroyView()
+    {
+        super.onDestroyView();
+        
+        Log.d(TAG, "onDestroyView()");
+        
+        SubjectList.getInstance(getActivity()).removeOnChangeListener(TimeTableFragment.this);
+        
+        mTimeTable = null;
+    }
+    
+    @Override
+    public void onSubjectListChanged(List<SubjectList.Change> changes)
+    {
+        if (mTimeTable == null)
+            return;
+        
+        LayoutInflater inflater = LayoutInflater.from(getActivity());
+        
+        for (SubjectList.Change change : changes)
+        {
+            // event is not shown in time table
+            if (change.isEventChange())
+                continue;
+            
+            Subject subject = change.getSubject();
+            
+            switch (change.getType())
+            {
+                case SubjectList.Change.TYPE_SUBJECT_ADDED:
+                    addSubjectViews(inflater, subject);
+                    break;
+                    
+                case SubjectList.Change.TYPE_SUBJECT_REMOVED:
+                    removeSubjectViews(subject.getSubjectCode());
+                    break;
+                    
+                case SubjectList.Change.TYPE_SUBJECT_CHANGED:
+                    removeSubjectViews(subject.getSubjectCode());
+                    addSubjectViews(inflater, subject);
+                    break;
+            }
+        }
+    }
+    
+    private void addSubjectViews(LayoutInflater inflater, Subject subject)
+    {
+        int colorIndex = subject.getColor();
+        
+        // description and section only shown in day view
+        final int visibility = mTimeTable.getDisplayType() == TimeTableLayout.TYPE_DAY ? View.VISIBLE : View.GONE;
+        
+        for (Schedule schedule: subject.getSchedules())
+        {
+            View child = inflater.inflate(R.layout.item_time_table_schedule, mTimeTable, false);
+            child.setBackgroundResource(mBackgrounds[colorIndex]);
+            child.setTag(subject.getSubjectCode());
+            
+            TextView subjectCodeTextView = (TextView)child.findViewById(R.id.text_subject_code);
+            TextView subjectDescriptionTextView = (TextView)child.findViewById(R.id.text_subject_description);
+            TextView sectionTextView = (TextView)child.findViewById(R.id.text_section);
+            TextView roomTextView = (TextView)child.findViewById(R.id.text_room);
+            
+            subjectCodeTextView.setText(subject.getSubjectCode());
+            subjectDescriptionTextView.setText(subject.getSubjectDescription());
+            sectionTextView.setText(subject.getSection(schedule.getSection()));
+            roomTextView.setText(schedule.getRoom());
+            
+            subjectCodeTextView.setTextColor(mColors[colorIndex]);
+            subjectDescriptionTextView.setTextColor(mColors[colorIndex]);
+            sectionTextView.setTextColor(mColors[colorIndex]);
+            roomTextView.setTextColor(mColors[colorIndex]);
+            
+            subjectDescriptionTextView.setVisibility(visibility);
+            sectionTextView.setVisibility(visibility);
+            
+            mTimeTable.addView(child, schedule.getDay(), schedule.getTime(), schedule.getLength());
+        }
+    }
+    
+    private void removeSubjectViews(String subjectCode)
+    {
+        // child view is tagged with the subject code
+        for (int i = mTimeTable.getChildCount() - 1; i >= 0; i--)
+        {
+            if (subjectCode.equals(mTimeTable.getChildAt(i).getTag()))
+                mTimeTable.removeViewAt(i);
+        }
+    }
+    
     public void setDisplayType(int type)
     {
         Log.d(TAG, "setDisplayType()");
@@ -88,6 +88,10 @@ public class TimeTableLayout extends ViewGroup
     private ScrollRunnable mScrollRunnable;
     private DayChangeRunnable mDayChangeRunnable;
     
+    // hours covered by the children, rebuilt on next lookup after any layout change
+    private final WeekBitmap mOccupancy = new WeekBitmap();
+    private boolean mOccupancyDirty = true;
+    
     // listener
     private OnItemClickListener mOnItemClickListener = null;
     private OnDayChangedListener mOnDayChangedListener = null;
@@ -513,6 +517,11 @@ public class TimeTableLayout extends ViewGroup
     // Getter and Setter
     // -----------------------------------------
     
+    public int getDisplayType()
+    {
+        return mDisplayType;
+    }
+    
     public void setDisplayType(int type)
     {
         // validate type
@@ -669,6 +678,13 @@ public class TimeTableLayout extends ViewGroup
     {
         final int childCount = getChildCount();
         
+        if (mOccupancyDirty)
+            rebuildOccupancy();
+        
+        // most of the cell are empty, dont go through every child for them
+        if (WeekBitmap.isValid(day, time) && !mOccupancy.isSet(day, time))
+            return null;
+        
         for (int i = 0; i < childCount; i++)
         {
             View child = getChildAt(i);
@@ -686,6 +702,36 @@ public class TimeTableLayout extends ViewGroup
         return null;
     }
     
+    private void rebuildOccupancy()
+    {
+        final int childCount = getChildCount();
+        
+        mOccupancy.clear();
+        
+        for (int i = 0; i < childCount; i++)
+        {
+            View child = getChildAt(i);
+            
+            if (child == null)
+                continue;
+            
+            LayoutParams params = (LayoutParams)child.getLayoutParams();
+            
+            mOccupancy.set(params.day, params.time, params.duration);
+        }
+        
+        mOccupancyDirty = false;
+    }
+    
+    @Override
+    public void requestLayout()
+    {
+        // child added, removed or its layout params changed
+        mOccupancyDirty = true;
+        
+        super.requestLayout();
+    }
+    
     public void scrollToCurrentTime()
     {
         Calendar calendar = Calendar.getInstance();
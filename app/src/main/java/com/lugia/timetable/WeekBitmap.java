@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+/**
+ * Occupancy of every hour in a week, one bit per hour.
+ *
+ * Day from 0 to 7 are accepted, covering both the 0 based day used by the UI and the 1 to 7 day accepted
+ * by {@link Schedule}, so the whole week fit in 3 long.
+ */
+final class WeekBitmap
+{
+    public static final int DAY_COUNT   = 8;
+    public static final int HOUR_COUNT  = 24;
+    
+    private static final int WORD_COUNT = (DAY_COUNT * HOUR_COUNT + 63) / 64;
+    
+    private final long[] mWords = new long[WORD_COUNT];
+    
+    public WeekBitmap()
+    {
+    }
+    
+    public WeekBitmap(WeekBitmap source)
+    {
+        System.arraycopy(source.mWords, 0, mWords, 0, WORD_COUNT);
+    }
+    
+    public static boolean isValid(int day, int hour)
+    {
+        return day >= 0 && day < DAY_COUNT && hour >= 0 && hour < HOUR_COUNT;
+    }
+    
+    /**
+     * Mark the hours from time to time + length - 1 as occupied, hour out of the day are ignored.
+     */
+    public void set(int day, int time, int length)
+    {
+        if (day < 0 || day >= DAY_COUNT)
+            return;
+        
+        int from = Math.max(time, 0);
+        int to   = Math.min(time + length, HOUR_COUNT);
+        
+        for (int hour = from; hour < to; hour++)
+        {
+            int bit = day * HOUR_COUNT + hour;
+            
+            mWords[bit >>> 6] |= 1L << bit;
+        }
+    }
+    
+    public boolean isSet(int day, int hour)
+    {
+        if (!isValid(day, hour))
+            return false;
+        
+        int bit = day * HOUR_COUNT + hour;
+        
+        return (mWords[bit >>> 6] & (1L << bit)) != 0;
+    }
+    
+    public boolean isEmpty()
+    {
+        for (long word : mWords)
+            if (word != 0)
+                return false;
+        
+        return true;
+    }
+    
+    public void clear()
+    {
+        for (int i = 0; i < WORD_COUNT; i++)
+            mWords[i] = 0;
+    }
+    
+    /**
+     * Add all occupied hour of other to this bitmap.
+     */
+    public void or(WeekBitmap other)
+    {
+        for (int i = 0; i < WORD_COUNT; i++)
+            mWords[i] |= other.mWords[i];
+    }
+    
+    /**
+     * @return true if both bitmap occupy a same hour.
+     */
+    public boolean intersects(WeekBitmap other)
+    {
+        for (int i = 0; i < WORD_COUNT; i++)
+            if ((mWords[i] & other.mWords[i]) != 0)
+                return true;
+        
+        return false;
+    }
+    
+    /**
+     * @return the hours occupied by both bitmap.
+     */
+    public WeekBitmap and(WeekBitmap other)
+    {
+        WeekBitmap result = new WeekBitmap(this);
+        
+        for (int i = 0; i < WORD_COUNT; i++)
+            result.mWords[i] &= other.mWords[i];
+        
+        return result;
+    }
+    
+    /**
+     * @return the free hours of the day between fromHour and toHour (exclusive), in ascending order.
+     */
+    public int[] getFreeHours(int day, int fromHour, int toHour)
+    {
+        if (day < 0 || day >= DAY_COUNT)
+            return new int[0];
+        
+        fromHour = Math.max(fromHour, 0);
+        toHour   = Math.min(toHour, HOUR_COUNT);
+        
+        int count = 0;
+        int[] hours = new int[Math.max(toHour - fromHour, 0)];
+        
+        for (int hour = fromHour; hour < toHour; hour++)
+            if (!isSet(day, hour))
+                hours[count++] = hour;
+        
+        if (count == hours.length)
+            return hours;
+        
+        int[] result = new int[count];
+        
+        System.arraycopy(hours, 0, result, 0, count);
+        
+        return result;
+    }
+    
+    /**
+     * @return number of occupied hour.
+     */
+    public int cardinality()
+    {
+        int count = 0;
+        
+        for (long word : mWords)
+            count += Long.bitCount(word);
+        
+        return count;
+    }
+    
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof WeekBitmap))
+            return false;
+        
+        WeekBitmap other = (WeekBitmap)o;
+        
+        for (int i = 0; i < WORD_COUNT; i++)
+            if (mWords[i] != other.mWords[i])
+                return false;
+        
+        return true;
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        int hash = 0;
+        
+        for (long word : mWords)
+            hash = hash * 31 + (int)(word ^ (word >>> 32));
+        
+        return hash;
+    }
+}
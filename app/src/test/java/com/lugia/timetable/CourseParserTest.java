@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CourseParserTest
+{
+    // larger than the part of the page given to the strategies
+    private static final int LONG_HEAD_SIZE = 20 * 1024;
+
+    @Test
+    public void anchorAfterFingerprintIsParsed() throws IOException
+    {
+        String page = page("<title>Course Details</title>" + style(LONG_HEAD_SIZE), "", "");
+
+        assertTrue(page.indexOf("Registered Course") > LONG_HEAD_SIZE);
+
+        assertSubjects(parseStream(page));
+    }
+
+    @Test
+    public void unknownLayoutFallBackToIcems() throws IOException
+    {
+        // no title or any other marker before the anchor
+        String page = page(style(LONG_HEAD_SIZE), "", "");
+
+        assertSubjects(parseStream(page));
+    }
+
+    @Test
+    public void pageWithoutAnchorIsRejected() throws IOException
+    {
+        String page = "<html><head><title>Course Details</title></head><body><p>Session expired</p></body></html>";
+
+        assertEquals(null, parseStream(page));
+    }
+
+    @Test
+    public void bothEnginesAgreeOnPlainPage() throws IOException
+    {
+        assertSameResult(page("<title>Course Details</title>", "", ""));
+    }
+
+    @Test
+    public void strayRowsOutsideSectionTablesAreIgnored() throws IOException
+    {
+        // white rows with the same cell count as the section rows, but not in the table after the anchor
+        String extra = "<table><tr bgcolor=\"#FFFFFF\"><td>Note</td><td>-</td><td>Add/Drop period</td><td>-</td><td>-</td><td>N/A</td></tr></table>\n";
+        String footer = "<table><tr bgcolor=\"#FFFFFF\"><td>9</td><td>TMA1101</td><td>LEC TC01</td><td>SAT</td><td>04:00 PM</td><td>HALL</td></tr></table>\n";
+
+        ArrayList<Subject> subjects = assertSameResult(page("<title>Course Details</title>", extra, footer));
+
+        assertSubjects(subjects);
+    }
+
+    @Test
+    public void invalidCreditHourSkipRow() throws IOException
+    {
+        String page = page("<title>Course Details</title>", "", "").replace("<td>4</td>", "<td>N/A</td>");
+
+        ArrayList<Subject> subjects = assertSameResult(page);
+
+        assertEquals(1, subjects.size());
+        assertEquals("TMA1101", subjects.get(0).getSubjectCode());
+    }
+
+    @Test
+    public void missingRowTableIsRejectedByBothEngines() throws IOException
+    {
+        // only a single table after the schedule anchor
+        String page = page("<title>Course Details</title>", "", "").replace("</table>\n<table><tr><td><table>\n<tr bgcolor=\"#FFFFFF\"><td>1</td>",
+                                                                             "</table>\n<div><table>\n<tr bgcolor=\"#FFFFFF\"><td>1</td>")
+                                                                    .replace("</table></td></tr></table>\n</body>", "</table></div>\n</body>");
+
+        assertEquals(null, CourseParser.tryParse(page));
+        assertEquals(null, parseStream(page));
+    }
+
+    @Test
+    public void decodeTimeTakeMarkerOfStartingTime()
+    {
+        assertEquals(8, CourseParser.decodeTime("08:00 AM"));
+        assertEquals(12, CourseParser.decodeTime("12:00 PM"));
+        assertEquals(13, CourseParser.decodeTime("01:00 PM"));
+        assertEquals(8, CourseParser.decodeTime("08:00 AM - 09:50 AM"));
+        assertEquals(14, CourseParser.decodeTime("02:00 PM - 03:50 PM"));
+
+        // range crossing noon start in the morning, the PM of the ending time does not count
+        assertEquals(11, CourseParser.decodeTime("11:00 AM - 12:50 PM"));
+        assertEquals(10, CourseParser.decodeTime("10:00 AM - 01:50 PM"));
+        assertEquals(12, CourseParser.decodeTime("12:00 PM - 01:50 PM"));
+
+        assertEquals(-1, CourseParser.decodeTime("TBA"));
+    }
+
+    @Test
+    public void decodeSlotOfRangeCrossingNoon()
+    {
+        int slot = CourseParser.decodeSlot("TUE", "11:00 AM - 12:50 PM");
+
+        assertEquals(2, CourseParser.getSlotDay(slot));
+        assertEquals(11, CourseParser.getSlotTime(slot));
+    }
+
+    /**
+     * Parse the page with both the DOM and stream parser, and make sure they give the same subjects.
+     */
+    private static ArrayList<Subject> assertSameResult(String page) throws IOException
+    {
+        ArrayList<Subject> expected = CourseParser.tryParse(page);
+        ArrayList<Subject> actual = parseStream(page);
+
+        assertTrue(expected != null);
+        assertTrue(actual != null);
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++)
+        {
+            Subject e = expected.get(i);
+            Subject a = actual.get(i);
+
+            assertEquals(e.getSubjectCode(), a.getSubjectCode());
+            assertEquals(e.getSubjectDescription(), a.getSubjectDescription());
+            assertEquals(e.getLectureSection(), a.getLectureSection());
+            assertEquals(e.getTutorialSection(), a.getTutorialSection());
+            assertEquals(e.getCreditHours(), a.getCreditHours());
+            assertEquals(e.getColor(), a.getColor());
+            assertEquals(e.getScheduleCount(), a.getScheduleCount());
+
+            for (int j = 0; j < e.getScheduleCount(); j++)
+            {
+                assertEquals(e.getScheduleSlot(j), a.getScheduleSlot(j));
+                assertEquals(e.getScheduleRoom(j), a.getScheduleRoom(j));
+            }
+        }
+
+        return actual;
+    }
+
+    static ArrayList<Subject> parseStream(String page) throws IOException
+    {
+        return CourseParser.tryParse(new ByteArrayInputStream(page.getBytes(CourseParser.DEFAULT_CHARSET)), null);
+    }
+
+    private static void assertSubjects(ArrayList<Subject> subjects)
+    {
+        assertTrue(subjects != null);
+        assertEquals(2, subjects.size());
+
+        assertEquals("TMA1101", subjects.get(0).getSubjectCode());
+        assertEquals(2, subjects.get(0).getScheduleCount());
+        assertEquals("TSN2101", subjects.get(1).getSubjectCode());
+        assertEquals(1, subjects.get(1).getScheduleCount());
+    }
+
+    private static String style(int size)
+    {
+        StringBuilder builder = new StringBuilder("<style>\n");
+
+        for (int i = 0; builder.length() < size; i++)
+            builder.append(".rule").append(i).append(" { color: #000000; }\n");
+
+        return builder.append("</style>").toString();
+    }
+
+    /**
+     * Build a page in ICEMS course detail layout with two subjects.
+     *
+     * @param head content of the head element.
+     * @param extra markup inserted between the registered course and schedule section.
+     * @param footer markup inserted after the schedule section.
+     */
+    static String page(String head, String extra, String footer)
+    {
+        return "<html><head>" + head + "</head><body>\n"
+             + "<table><tr><td><b>Registered Course</b></td></tr></table>\n"
+             + "<table><tr><td><table>\n"
+             + "<tr bgcolor=\"#CCCCCC\"><td>No</td><td>Code</td><td>Description</td><td>Lecture</td><td>Tutorial</td><td>Credit</td></tr>\n"
+             + "<tr bgcolor=\"#FFFFFF\"><td>1</td><td>TMA1101</td><td>Calculus</td><td>TC01</td><td>TT01</td><td>3</td></tr>\n"
+             + "<tr bgcolor=\"#FFFFFF\"><td>2</td><td>TSN2101</td><td>Operating System</td><td>TC02</td><td>-</td><td>4</td></tr>\n"
+             + "</table></td></tr></table>\n"
+             + extra
+             + "<table><tr><td><b>Schedule</b></td></tr></table>\n"
+             + "<table><tr><td><table>\n"
+             + "<tr bgcolor=\"#FFFFFF\"><td>1</td><td>TMA1101</td><td>LEC TC01</td><td>MON</td><td>08:00 AM - 09:50 AM</td><td>CNMX1001</td></tr>\n"
+             + "<tr bgcolor=\"#FFFFFF\"><td>2</td><td>TUT TT01</td><td>WED</td><td>02:00 PM</td><td>CQAR2004</td></tr>\n"
+             + "<tr bgcolor=\"#FFFFFF\"><td>3</td><td>TSN2101</td><td>LEC TC02</td><td>FRI</td><td>10:00 AM</td><td>CNMX1002</td></tr>\n"
+             + "</table></td></tr></table>\n"
+             + footer
+             + "</body></html>\n";
+    }
+}
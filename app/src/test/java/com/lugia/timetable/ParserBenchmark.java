@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * Throughput benchmark of the course page parser engines, run on the JVM by {@link ParserBenchmarkTest}.
+ *
+ * The corpus is generated, it follow the structure of ICEMS course detail page with made up subjects and
+ * rooms, so no student data is involved.
+ */
+final class ParserBenchmark
+{
+    public static final int ENGINE_DOM    = 0;
+    public static final int ENGINE_STREAM = 1;
+
+    public static final String[] ENGINE_NAMES = new String[] { "dom", "stream" };
+
+    // corpus: name, subject count, schedule row per subject
+    public static final String[] CORPUS_NAMES   = new String[] { "small", "typical", "synthetic-10k" };
+    public static final int[] CORPUS_SUBJECTS   = new int[]    { 2,       7,         1000            };
+    public static final int[] CORPUS_ROWS       = new int[]    { 2,       4,         10              };
+
+    // prevent user to instantiate using default constructor
+    private ParserBenchmark() { }
+
+    /**
+     * Measure a single engine with the page.
+     */
+    public static Result run(int engine, byte[] page, long warmupMillis, long measureMillis)
+    {
+        // let the JIT settle down first
+        long end = System.currentTimeMillis() + warmupMillis;
+
+        while (System.currentTimeMillis() < end)
+            parse(engine, page);
+
+        long allocationStart = getAllocatedBytes();
+
+        int count = 0;
+
+        long start = System.nanoTime();
+        end = System.currentTimeMillis() + measureMillis;
+
+        while (System.currentTimeMillis() < end)
+        {
+            parse(engine, page);
+            count++;
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        long allocated = getAllocatedBytes() - allocationStart;
+
+        Result result = new Result();
+
+        result.pagesPerSecond  = count * 1e9 / elapsed;
+        result.bytesPerSecond  = result.pagesPerSecond * page.length;
+        result.allocationPerOp = allocationStart < 0 ? -1 : allocated / count;
+
+        return result;
+    }
+
+    private static ArrayList<Subject> parse(int engine, byte[] page)
+    {
+        try
+        {
+            if (engine == ENGINE_DOM)
+                return CourseParser.tryParse(new String(page, CourseParser.DEFAULT_CHARSET));
+            else
+                return CourseParser.tryParse(new ByteArrayInputStream(page), CourseParser.DEFAULT_CHARSET);
+        }
+        catch (IOException e)
+        {
+            // reading from memory never fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return bytes allocated by current thread so far, or -1 if the JVM does not count it.
+     */
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Generate a page in ICEMS course detail layout.
+     *
+     * @param subjectCount number of registered course.
+     * @param rowCount number of schedule row of every subject.
+     */
+    public static byte[] generatePage(int subjectCount, int rowCount)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("<html><head><title>Course Details</title></head><body>\n");
+
+        builder.append("<table><tr><td><b>Registered Course</b></td></tr></table>\n");
+        builder.append("<table><tr><td><table>\n");
+        builder.append("<tr bgcolor=\"#CCCCCC\"><td>No</td><td>Code</td><td>Description</td><td>Lecture</td><td>Tutorial</td><td>Credit</td></tr>\n");
+
+        for (int i = 0; i < subjectCount; i++)
+        {
+            builder.append(String.format("<tr bgcolor=\"#FFFFFF\"><td>%d</td><td>SUB%04d</td><td>Subject Number %d</td><td>LC%02d</td><td>%s</td><td>%d</td></tr>\n",
+                                         i + 1, i, i, i % 20, i % 3 == 0 ? "-" : String.format("TT%02d", i % 20), 3 + i % 2));
+        }
+
+        builder.append("</table></td></tr></table>\n");
+
+        builder.append("<table><tr><td><b>Schedule</b></td></tr></table>\n");
+        builder.append("<table><tr><td><table>\n");
+
+        int index = 1;
+
+        for (int i = 0; i < subjectCount; i++)
+        {
+            for (int j = 0; j < rowCount; j++)
+            {
+                // days from MON to SAT, hours from 8 AM to 5 PM
+                String day = CourseParser.DAYS[1 + (i + j / 2) % 6];
+                int hour = 8 + (i + j) % 10;
+                String time = String.format("%02d:00 %s", hour > 12 ? hour - 12 : hour, hour >= 12 ? "PM" : "AM");
+                String room = String.format("ROOM%03d", (i * 7 + j) % 200);
+
+                builder.append("<tr bgcolor=\"#FFFFFF\"><td>").append(index++).append("</td>");
+
+                if (j == 0)
+                    builder.append("<td>SUB").append(String.format("%04d", i)).append("</td><td>LEC LC01</td>");
+                else if (j == rowCount / 2)
+                    builder.append("<td>TUT TT01</td>");
+
+                builder.append("<td>").append(day).append("</td><td>").append(time).append("</td><td>").append(room).append("</td></tr>\n");
+            }
+        }
+
+        builder.append("</table></td></tr></table>\n</body></html>\n");
+
+        try
+        {
+            return builder.toString().getBytes(CourseParser.DEFAULT_CHARSET);
+        }
+        catch (IOException e)
+        {
+            // ISO-8859-1 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Properties loadBaseline(File file) throws IOException
+    {
+        Properties properties = new Properties();
+
+        if (!file.exists())
+            return properties;
+
+        FileInputStream in = new FileInputStream(file);
+
+        try
+        {
+            properties.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return properties;
+    }
+
+    public static void saveBaseline(File file, Properties properties) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+
+        try
+        {
+            properties.store(out, "Parser benchmark baseline, pages per second");
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public static final class Result
+    {
+        public double pagesPerSecond;
+        public double bytesPerSecond;
+
+        public long allocationPerOp;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Regression gate of the parser throughput, every engine and corpus is compared against the baseline in
+ * src/test/resources, the test fail when any of them drop more than {@link #MAX_REGRESSION}.
+ *
+ * The baseline is measured on the reference machine, run with -Dparser.benchmark.record=true to measure
+ * it again after an intended change, and commit the file.
+ */
+public class ParserBenchmarkTest
+{
+    // allowed drop of throughput against the baseline
+    private static final double MAX_REGRESSION = 0.3;
+
+    private static final long WARMUP_MILLIS  = 1000;
+    private static final long MEASURE_MILLIS = 2000;
+
+    private static final String BASELINE_FILE = "src/test/resources/parser_benchmark.baseline";
+
+    @Test
+    public void throughputDoesNotRegress() throws IOException
+    {
+        File file = new File(System.getProperty("parser.benchmark.baseline", BASELINE_FILE));
+        boolean record = Boolean.getBoolean("parser.benchmark.record");
+
+        Properties baseline = ParserBenchmark.loadBaseline(file);
+        Properties current = new Properties();
+
+        ArrayList<String> regressions = new ArrayList<String>();
+
+        for (int i = 0; i < ParserBenchmark.CORPUS_NAMES.length; i++)
+        {
+            byte[] page = ParserBenchmark.generatePage(ParserBenchmark.CORPUS_SUBJECTS[i], ParserBenchmark.CORPUS_ROWS[i]);
+
+            for (int engine = ParserBenchmark.ENGINE_DOM; engine <= ParserBenchmark.ENGINE_STREAM; engine++)
+            {
+                String key = ParserBenchmark.CORPUS_NAMES[i] + "." + ParserBenchmark.ENGINE_NAMES[engine];
+
+                ParserBenchmark.Result result = ParserBenchmark.run(engine, page, WARMUP_MILLIS, MEASURE_MILLIS);
+
+                current.setProperty(key, String.format("%.1f", result.pagesPerSecond));
+
+                String message = String.format("%s: %.1f pages/s, %.1f KB/s, %d bytes/op",
+                                               key, result.pagesPerSecond, result.bytesPerSecond / 1024, result.allocationPerOp);
+
+                String base = baseline.getProperty(key);
+
+                if (base != null)
+                {
+                    double basePagesPerSecond = Double.parseDouble(base);
+                    double change = result.pagesPerSecond / basePagesPerSecond - 1;
+
+                    message += String.format(" (%+.1f%% against baseline)", change * 100);
+
+                    if (change < -MAX_REGRESSION)
+                        regressions.add(message);
+                }
+                else if (!record)
+                    regressions.add(key + " has no baseline");
+
+                System.out.println(message);
+            }
+        }
+
+        if (record)
+        {
+            ParserBenchmark.saveBaseline(file, current);
+            return;
+        }
+
+        if (!regressions.isEmpty())
+            fail("Parser throughput regressed more than " + (int)(MAX_REGRESSION * 100) + "%: " + regressions);
+    }
+}
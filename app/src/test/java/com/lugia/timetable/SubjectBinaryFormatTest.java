@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SubjectBinaryFormatTest
+{
+    // offset of the string count, right after magic and version
+    private static final int STRING_COUNT_OFFSET = 6;
+
+    @Test
+    public void roundTrip() throws IOException
+    {
+        ArrayList<Subject> subjects = read(write());
+
+        assertEquals(2, subjects.size());
+
+        Subject subject = subjects.get(0);
+
+        assertEquals("TMA1101", subject.getSubjectCode());
+        assertEquals("TC01", subject.getLectureSection());
+        assertEquals(null, subject.getTutorialSection());
+        assertEquals(2, subject.getScheduleCount());
+        assertEquals("CNMX1001", subject.getScheduleRoom(0));
+        assertEquals(1, subject.getEvents().size());
+        assertEquals("Quiz", subject.getEvents().get(0).getName());
+    }
+
+    @Test
+    public void corruptedCountIsRejectedByChecksum() throws IOException
+    {
+        byte[] data = write();
+
+        data[STRING_COUNT_OFFSET] = 0x7f;
+
+        assertRejected(data);
+    }
+
+    @Test
+    public void corruptedCountWithValidChecksumIsRejected() throws IOException
+    {
+        byte[] data = write();
+
+        data[STRING_COUNT_OFFSET] = 0x7f;
+
+        // a count larger than the file must not be trusted even if the checksum match
+        assertRejected(updateChecksum(data));
+    }
+
+    @Test
+    public void corruptedStringLengthWithValidChecksumIsRejected() throws IOException
+    {
+        byte[] data = write();
+
+        // length of the first string
+        data[STRING_COUNT_OFFSET + 4] = 0x7f;
+
+        assertRejected(updateChecksum(data));
+    }
+
+    @Test
+    public void invalidScheduleSlotIsRejected() throws IOException
+    {
+        Subject subject = new Subject("TMA1101", "Calculus", "TC01", null, 3, 0);
+        subject.addSchedule(Schedule.LECTURE_SECTION, 1, 8, "CNMX1001");
+
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+        subjects.add(subject);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SubjectBinaryFormat.write(out, subjects);
+
+        byte[] data = out.toByteArray();
+        long slot = subject.getScheduleSlot(0);
+
+        // the slot is the only place the packed value appear, day is packed in its fourth lowest byte
+        int offset = indexOf(data, slot);
+        data[offset + 4] = 9;
+
+        assertRejected(updateChecksum(data));
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws IOException
+    {
+        byte[] data = write();
+        byte[] truncated = new byte[data.length / 2];
+
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertRejected(truncated);
+    }
+
+    private static byte[] write() throws IOException
+    {
+        Subject calculus = new Subject("TMA1101", "Calculus", "TC01", null, 3, 0xff0000);
+        calculus.addSchedule(Schedule.LECTURE_SECTION, 1, 8, "CNMX1001");
+        calculus.addSchedule(Schedule.LECTURE_SECTION, 3, 10, "CNMX1001");
+        calculus.addEvent(new Event(1, "Quiz", null, "Chapter 1", 1, 20141020, 900, 1000));
+
+        Subject network = new Subject("TSN2101", "Networking", null, "TT02", 4, 0x00ff00);
+        network.addSchedule(Schedule.TUTORIAL_SECTION, 2, 14, "CQAR2004");
+
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+        subjects.add(calculus);
+        subjects.add(network);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SubjectBinaryFormat.write(out, subjects);
+
+        return out.toByteArray();
+    }
+
+    private static ArrayList<Subject> read(byte[] data) throws IOException
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+
+        SubjectBinaryFormat.read(new ByteArrayInputStream(data), subjects);
+
+        return subjects;
+    }
+
+    private static void assertRejected(byte[] data)
+    {
+        ArrayList<Subject> subjects = new ArrayList<Subject>();
+
+        try
+        {
+            SubjectBinaryFormat.read(new ByteArrayInputStream(data), subjects);
+
+            fail("Damaged data is accepted.");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        assertTrue(subjects.isEmpty());
+    }
+
+    private static byte[] updateChecksum(byte[] data)
+    {
+        int end = data.length - 4;
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, end);
+
+        int checksum = (int)crc.getValue();
+
+        data[end]     = (byte)(checksum >>> 24);
+        data[end + 1] = (byte)(checksum >>> 16);
+        data[end + 2] = (byte)(checksum >>> 8);
+        data[end + 3] = (byte)checksum;
+
+        return data;
+    }
+
+    private static int indexOf(byte[] data, long value)
+    {
+        for (int i = 0; i + 8 <= data.length; i++)
+        {
+            long current = 0;
+
+            for (int j = 0; j < 8; j++)
+                current = (current << 8) | (data[i + j] & 0xff);
+
+            if (current == value)
+                return i;
+        }
+
+        throw new IllegalStateException("Value not found.");
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014 Lugia Programming Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lugia.timetable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubjectScheduleTest
+{
+    private static final int LEC = Schedule.LECTURE_SECTION;
+    private static final int TUT = Schedule.TUTORIAL_SECTION;
+
+    private static final int MON = 1;
+    private static final int TUE = 2;
+
+    // one hour rows as they come from the schedule table: section, day, time, room
+    private static final Object[][] ROWS = new Object[][]
+    {
+        { LEC, MON,  8, "CNMX1001" },
+        { LEC, MON,  9, "CNMX1001" },
+        { LEC, MON, 10, "CNMX1001" },
+        { TUT, MON, 10, "CQAR2004" },
+        { TUT, MON, 11, "CQAR2004" },
+        { LEC, TUE, 14, "CNMX1001" },
+        { LEC, TUE, 15, "CNMX1001" },
+    };
+
+    private static final String[] MERGED = new String[]
+    {
+        "0 1 8 3 CNMX1001",
+        "1 1 10 2 CQAR2004",
+        "0 2 14 2 CNMX1001",
+    };
+
+    @Test
+    public void ascendingRows()
+    {
+        assertSchedules(MERGED, add(Arrays.asList(ROWS)));
+    }
+
+    @Test
+    public void descendingRows()
+    {
+        List<Object[]> rows = new ArrayList<Object[]>(Arrays.asList(ROWS));
+
+        Collections.reverse(rows);
+
+        assertSchedules(MERGED, add(rows));
+    }
+
+    @Test
+    public void shuffledRows()
+    {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 200; i++)
+        {
+            List<Object[]> rows = new ArrayList<Object[]>(Arrays.asList(ROWS));
+
+            Collections.shuffle(rows, random);
+
+            assertSchedules(MERGED, add(rows));
+        }
+    }
+
+    @Test
+    public void duplicateRows()
+    {
+        List<Object[]> rows = new ArrayList<Object[]>(Arrays.asList(ROWS));
+
+        rows.addAll(Arrays.asList(ROWS));
+        rows.add(ROWS[1]);
+
+        assertSchedules(MERGED, add(rows));
+    }
+
+    @Test
+    public void clashingRowsDoNotHideNeighbour()
+    {
+        // other section and room at the same hours as the lecture, added between the lecture hours
+        Object[][] rows = new Object[][]
+        {
+            { LEC, MON,  9, "CNMX1001" },
+            { TUT, MON,  9, "CQAR2004" },
+            { LEC, MON,  9, "CNMX1002" },
+            { TUT, MON,  8, "CQAR2004" },
+            { LEC, MON,  8, "CNMX1002" },
+            { LEC, MON,  8, "CNMX1001" },
+            { LEC, MON, 10, "CNMX1001" },
+        };
+
+        String[] expected = new String[]
+        {
+            "0 1 8 3 CNMX1001",
+            "0 1 8 2 CNMX1002",
+            "1 1 8 2 CQAR2004",
+        };
+
+        assertSchedules(expected, add(Arrays.asList(rows)));
+
+        Random random = new Random(2);
+
+        for (int i = 0; i < 200; i++)
+        {
+            List<Object[]> shuffled = new ArrayList<Object[]>(Arrays.asList(rows));
+
+            Collections.shuffle(shuffled, random);
+
+            assertSchedules(expected, add(shuffled));
+        }
+    }
+
+    private static Subject add(List<Object[]> rows)
+    {
+        Subject subject = new Subject("TMA1101", "Calculus", "TC01", "TT01", 3);
+
+        for (Object[] row : rows)
+            subject.addSchedule((Integer)row[0], (Integer)row[1], (Integer)row[2], (String)row[3]);
+
+        return subject;
+    }
+
+    /**
+     * Schedules must be sorted by day and time, schedules start at the same hour are compared in any order.
+     */
+    private static void assertSchedules(String[] expected, Subject subject)
+    {
+        assertEquals(expected.length, subject.getScheduleCount());
+
+        ArrayList<String> actual = new ArrayList<String>();
+
+        for (int i = 0; i < subject.getScheduleCount(); i++)
+        {
+            long slot = subject.getScheduleSlot(i);
+
+            if (i > 0)
+            {
+                long last = subject.getScheduleSlot(i - 1);
+
+                assertTrue(Schedule.getDay(last) * 24 + Schedule.getTime(last) <= Schedule.getDay(slot) * 24 + Schedule.getTime(slot));
+            }
+
+            actual.add(Schedule.getSection(slot) + " " + Schedule.getDay(slot) + " " + Schedule.getTime(slot) + " "
+                       + Schedule.getLength(slot) + " " + subject.getScheduleRoom(i));
+        }
+
+        Collections.sort(actual);
+
+        String[] sorted = expected.clone();
+
+        Arrays.sort(sorted);
+
+        assertEquals(Arrays.asList(sorted), actual);
+    }
+}